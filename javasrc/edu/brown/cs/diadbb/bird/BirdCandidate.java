@@ -0,0 +1,907 @@
+/********************************************************************************/
+/*                                                                              */
+/*              BirdCandidate.java                                              */
+/*                                                                              */
+/*      Immutable snapshot of a DIAD candidate from a single update             */
+/*                                                                              */
+/********************************************************************************/
+/*      Copyright 2025 Brown University -- Steven P. Reiss                    */
+/*********************************************************************************
+ *  Copyright 2025, Brown University, Providence, RI.                            *
+ *                                                                               *
+ *                        All Rights Reserved                                    *
+ *                                                                               *
+ * This program and the accompanying materials are made available under the      *
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution, *
+ * and is available at                                                           *
+ *      http://www.eclipse.org/legal/epl-v10.html                                *
+ *                                                                               *
+ ********************************************************************************/
+
+
+
+package edu.brown.cs.diadbb.bird;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.StringTokenizer;
+import java.util.zip.CRC32;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import edu.brown.cs.ivy.xml.IvyXml;
+
+final class BirdCandidate implements BirdConstants
+{
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Private Storage                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+private final String    candidate_text;
+private Element         candidate_xml;
+private BirdCandidate   base_candidate;
+private BirdCandidate   delta_candidate;
+private final int       delta_depth;
+private final CandidateFields candidate_fields;
+private final String    candidate_id;
+private final DiadCandidateState candidate_state;
+private final boolean   auto_query;
+private final String    thread_id;
+private final String    thread_name;
+private final String    frame_id;
+private final String    location_string;
+private final String    symptom_string;
+private final String    symptom_key;
+private final String    start_frame_id;
+private final String    response_text;
+private final String    frame_file;
+
+private static final Map<DiadValueOperator,String> OP_NAMES;
+
+private static final int MAX_DELTA_DEPTH = 8;
+
+private static final Map<String,SourceHash> source_hashes = new HashMap<>();
+private static final int MAX_SOURCE_HASHES = 256;
+
+static {
+   OP_NAMES = new HashMap<>();
+   OP_NAMES.put(DiadValueOperator.EQL,"==");
+   OP_NAMES.put(DiadValueOperator.GEQ,">=");
+   OP_NAMES.put(DiadValueOperator.GTR,">");
+   OP_NAMES.put(DiadValueOperator.LEQ,"<=");
+   OP_NAMES.put(DiadValueOperator.LSS,"<");
+   OP_NAMES.put(DiadValueOperator.NEQ,"!=");
+   OP_NAMES.put(DiadValueOperator.CONTAINS,"CONTAINS");
+   OP_NAMES.put(DiadValueOperator.NOTCONTAINS,"NOT CONTAINS");
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Constructors                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Build a snapshot from a CANDIDATE element.  This does all the DOM
+ *      work for an update and is meant to be done off the Swing thread.
+ **/
+
+BirdCandidate(Element xml)
+{
+   this(null,xml,new CandidateFields(xml),null,null);
+}
+
+
+/**
+ *      Build a snapshot from the text of an update message by pulling out
+ *      just the fields that are used.  The DOM for the candidate is only
+ *      built if getXml() is called.  Returns null if there is no candidate.
+ **/
+
+static BirdCandidate readCandidate(String text) throws XMLStreamException
+{
+   CandidateFields cf = new CandidateFields();
+   if (!cf.read(text)) return null;
+
+   return new BirdCandidate(text,null,cf,null,null);
+}
+
+
+/**
+ *      Build the snapshot that results from applying a delta update to
+ *      the previous snapshot of the same candidate.  Sub-elements not in
+ *      the delta are kept from the previous snapshot.  The merged DOM is
+ *      only built if asked for; long chains of deltas are collapsed so
+ *      that old snapshots are not kept alive.
+ **/
+
+static BirdCandidate applyDelta(BirdCandidate prev,BirdCandidate delta)
+{
+   CandidateFields cf = new CandidateFields(prev.candidate_fields,delta.candidate_fields);
+   BirdCandidate rslt = new BirdCandidate(null,null,cf,prev,delta);
+   if (rslt.delta_depth > MAX_DELTA_DEPTH) rslt.getXml();
+
+   return rslt;
+}
+
+
+private BirdCandidate(String text,Element xml,CandidateFields cf,
+      BirdCandidate base,BirdCandidate delta)
+{
+   candidate_text = text;
+   candidate_xml = xml;
+   base_candidate = base;
+   delta_candidate = delta;
+   delta_depth = (base == null ? 0 : base.getDeltaDepth() + 1);
+   candidate_fields = cf;
+   candidate_id = cf.candidate_id;
+   candidate_state = getEnum(cf.candidate_state,DiadCandidateState.DEAD);
+   auto_query = BirdXmlReader.getBoolean(cf.auto_query);
+   thread_id = cf.thread_id;
+   thread_name = cf.thread_name;
+   frame_id = cf.frame_id;
+   location_string = computeLocationString(cf);
+   frame_file = cf.frame_file;
+   symptom_string = computeSymptomString(cf);
+   symptom_key = computeSymptomKey(cf);
+   start_frame_id = cf.start_frame_id;
+   response_text = cf.response_text;
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Access methods                                                          */
+/*                                                                              */
+/********************************************************************************/
+
+String getId()                                  { return candidate_id; }
+DiadCandidateState getState()                   { return candidate_state; }
+boolean getAutoQuery()                          { return auto_query; }
+String getThreadId()                            { return thread_id; }
+String getFrameId()                             { return frame_id; }
+String getLocationString()                      { return location_string; }
+String getSymptomString()                       { return symptom_string; }
+String getStartFrameId()                        { return start_frame_id; }
+String getResponse()                            { return response_text; }
+
+
+/**
+ *      Return the CANDIDATE element, building it from the update text the
+ *      first time it is needed.
+ **/
+
+synchronized Element getXml()
+{
+   if (candidate_xml == null && base_candidate != null) {
+      candidate_xml = mergeXml(base_candidate.getXml(),delta_candidate.getXml());
+      base_candidate = null;
+      delta_candidate = null;
+    }
+   else if (candidate_xml == null && candidate_text != null) {
+      Element xml = IvyXml.convertStringToXml(candidate_text);
+      if (!IvyXml.isElement(xml,"CANDIDATE")) {
+         xml = IvyXml.getChild(xml,"CANDIDATE");
+       }
+      candidate_xml = xml;
+    }
+
+   return candidate_xml;
+}
+
+
+/**
+ *      Return a fingerprint of the parts of the candidate that determine
+ *      the answer to a LIMBA query: the symptom, the starting frame and
+ *      the current location.
+ **/
+
+String getFingerprint()
+{
+   int h = Objects.hash(symptom_key,start_frame_id,frame_id,location_string);
+
+   return Integer.toHexString(h);
+}
+
+
+/**
+ *      Return a fingerprint that identifies the same problem across
+ *      sessions: the symptom, the location and the contents of the
+ *      source file at that location.  This is only needed to use the
+ *      response store, so the source is hashed here rather than for every
+ *      update.
+ **/
+
+String getStoreFingerprint()
+{
+   int h = Objects.hash(symptom_key,location_string);
+
+   return Integer.toHexString(h) + "_" + Long.toHexString(getSourceHash(frame_file));
+}
+
+
+/**
+ *      Return true if this is a delta update rather than a full snapshot.
+ **/
+
+boolean isDelta()                               { return candidate_fields.is_delta; }
+
+
+/**
+ *      Return the update sequence number, or -1 if DIAD did not send one.
+ **/
+
+long getSequence()                              { return candidate_fields.update_seq; }
+
+
+/**
+ *      Return true if this delta update applies directly to the given
+ *      snapshot, i.e. no update in between has been missed.
+ **/
+
+boolean followsFrom(BirdCandidate prev)
+{
+   if (prev == null || !isDelta()) return false;
+   if (getSequence() < 0 || prev.getSequence() < 0) return false;
+
+   return getSequence() == prev.getSequence() + 1;
+}
+
+
+private synchronized int getDeltaDepth()
+{
+   if (base_candidate == null) return 0;
+
+   return delta_depth;
+}
+
+
+String getTitle()
+{
+   if (thread_name != null && !thread_name.isEmpty()) return thread_name;
+
+   return candidate_id;
+}
+
+
+boolean shouldRemove()
+{
+   switch (candidate_state) {
+      case DEAD :
+      case INTERRUPTED :
+         return true;
+      default :
+         break;
+    }
+
+   return false;
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Difference methods                                                      */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Return the set of changes from the previous snapshot of the same
+ *      candidate (or NEW if there was none).
+ **/
+
+EnumSet<DiadCandidateChange> getChanges(BirdCandidate prev)
+{
+   EnumSet<DiadCandidateChange> rslt = EnumSet.noneOf(DiadCandidateChange.class);
+   if (prev == null) {
+      rslt.add(DiadCandidateChange.NEW);
+      return rslt;
+    }
+
+   if (candidate_state != prev.candidate_state) {
+      rslt.add(DiadCandidateChange.STATE);
+    }
+   if (!Objects.equals(symptom_key,prev.symptom_key)) {
+      rslt.add(DiadCandidateChange.SYMPTOM);
+    }
+   if (!Objects.equals(location_string,prev.location_string) ||
+         !Objects.equals(frame_id,prev.frame_id)) {
+      rslt.add(DiadCandidateChange.LOCATION);
+    }
+   if (!Objects.equals(start_frame_id,prev.start_frame_id)) {
+      rslt.add(DiadCandidateChange.START_FRAME);
+    }
+   if (!Objects.equals(response_text,prev.response_text)) {
+      rslt.add(DiadCandidateChange.RESPONSE);
+    }
+   if (!Objects.equals(thread_id,prev.thread_id) ||
+         !Objects.equals(thread_name,prev.thread_name)) {
+      rslt.add(DiadCandidateChange.THREAD);
+    }
+
+   return rslt;
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      String computation methods                                              */
+/*                                                                              */
+/********************************************************************************/
+
+private static String computeLocationString(CandidateFields cf)
+{
+   if (!cf.have_frame) {
+      return "<TBD>";
+    }
+
+   String cnm = cf.frame_class;
+   String mnm = cf.frame_method;
+   String line = cf.frame_line;
+
+   if (cnm != null && !cnm.isEmpty()) {
+      cnm = getShortName(cnm) + ".";
+    }
+   else cnm = "";
+   if (line != null && !line.isEmpty()) {
+      line = line + " @ ";
+    }
+   else line = "";
+
+   if (mnm == null) mnm = "<TBD>";
+
+   return line + cnm + mnm;
+}
+
+
+/**
+ *      Return the hash of a source file.  Hashes are kept by file name and
+ *      only recomputed when the file has been modified.
+ **/
+
+private static long getSourceHash(String fnm)
+{
+   if (fnm == null) return 0;
+
+   File f = new File(fnm);
+   long dlm = f.lastModified();
+   if (dlm == 0) return 0;
+
+   synchronized (source_hashes) {
+      SourceHash sh = source_hashes.get(fnm);
+      if (sh != null && sh.last_modified == dlm) return sh.hash_value;
+    }
+
+   long h = computeSourceHash(f);
+
+   synchronized (source_hashes) {
+      if (source_hashes.size() >= MAX_SOURCE_HASHES) source_hashes.clear();
+      source_hashes.put(fnm,new SourceHash(dlm,h));
+    }
+
+   return h;
+}
+
+
+private static long computeSourceHash(File f)
+{
+   if (!f.canRead()) return 0;
+
+   CRC32 crc = new CRC32();
+   try {
+      crc.update(Files.readAllBytes(f.toPath()));
+    }
+   catch (IOException e) {
+      return 0;
+    }
+
+   return crc.getValue();
+}
+
+
+/**
+ *      The symptom key identifies the symptom for comparing snapshots.  It
+ *      is built from the symptom fields rather than the XML text so it is
+ *      the same whichever way the update was parsed.
+ **/
+
+private static String computeSymptomKey(CandidateFields cf)
+{
+   if (!cf.have_symptom) return null;
+
+   StringBuffer buf = new StringBuffer();
+   buf.append(cf.symptom_type);
+   buf.append("|");
+   buf.append(cf.symptom_operator);
+   buf.append("|");
+   buf.append(cf.symptom_precision);
+   buf.append("|");
+   buf.append(cf.symptom_item);
+   buf.append("|");
+   buf.append(cf.symptom_original);
+   buf.append("|");
+   buf.append(cf.symptom_target);
+   buf.append("|");
+   buf.append(cf.symptom_user);
+
+   return buf.toString();
+}
+
+
+private static String computeSymptomString(CandidateFields cf)
+{
+   DiadSymptomType typ = getEnum(cf.symptom_type,DiadSymptomType.NONE);
+   String itm = cf.symptom_item;
+   String orig = cf.symptom_original;
+   String tgt = cf.symptom_target;
+   DiadValueOperator op = getEnum(cf.symptom_operator,DiadValueOperator.NONE);
+   double prec = 0;
+   if (cf.symptom_precision != null) {
+      try {
+         prec = Double.parseDouble(cf.symptom_precision);
+       }
+      catch (NumberFormatException e) { }
+    }
+
+   String ops = OP_NAMES.get(op);
+   if (ops == null) {
+      ops = op.toString();
+    }
+
+   switch (typ) {
+      case NONE :
+         return "No Symptom Found";
+      case EXCEPTION :
+         return "Exception " + getShortName(itm) + " was thrown";
+      case LIBRARY_EXCEPTION :
+         String rtn = orig;
+         if (rtn != null && !rtn.isEmpty()) {
+            int idx = rtn.lastIndexOf(";");
+            if (rtn.equals("<init>")) rtn = "Constructor";
+            else if (idx > 0) {
+               rtn = "``" + rtn.substring(0,idx) + "''";
+             }
+            else rtn = "Method " + rtn;
+            return rtn + " throws " + getShortName(itm);
+          }
+         else {
+            return "Exception " + getShortName(itm) + " was thrown in library";
+          }
+      case ASSERTION :
+         String cnts = null;
+         if (op != DiadValueOperator.NONE && orig != null && tgt != null) {
+            if (prec != 0) ops = "~" + ops;
+            cnts = orig + " " + ops + " " + tgt;
+          }
+         else if (itm != null) {
+            cnts = itm;
+          }
+         else if (orig != null) {
+            cnts = orig;
+          }
+         if (cnts == null) return "Assertion failed";
+         else return "Assertion failed: " + cnts;
+      case VARIABLE :
+         return "Variable " + itm + " = " + orig + ", should be " + tgt;
+      case EXPRESSION :
+         return "Expression " + itm + " = " + orig + ", should be " + tgt;
+      case LOCATION :
+         return "Execution should not be here";
+      case NO_EXCEPTION :
+         return "Exception " + getShortName(itm) + " should have been thrown";
+      case OTHER :
+         String desc = cf.symptom_user;
+         if (desc != null && !desc.isEmpty()) return desc;
+         return "User Defined Problem";
+    }
+   return "SYMPTOM";
+}
+
+
+
+/**
+ *      Apply a delta CANDIDATE element to a copy of the previous one.  The
+ *      attributes of the delta replace those of the base, child elements
+ *      replace all base children of the same name, and elements listed in
+ *      REMOVE are dropped.
+ **/
+
+private static Element mergeXml(Element base,Element delta)
+{
+   if (base == null) return delta;
+   if (delta == null) return base;
+
+   Element rslt = (Element) base.cloneNode(true);
+   rslt.removeAttribute("DELTA");
+
+   NamedNodeMap attrs = delta.getAttributes();
+   for (int i = 0; i < attrs.getLength(); ++i) {
+      Node n = attrs.item(i);
+      String nm = n.getNodeName();
+      if (nm.equals("DELTA") || nm.equals("REMOVE")) continue;
+      rslt.setAttribute(nm,n.getNodeValue());
+    }
+
+   Set<String> drop = getRemoveSet(IvyXml.getAttrString(delta,"REMOVE"));
+   for (Element c : IvyXml.children(delta)) {
+      drop.add(c.getNodeName());
+    }
+   List<Element> olds = new ArrayList<>();
+   for (Element c : IvyXml.children(rslt)) {
+      if (drop.contains(c.getNodeName())) olds.add(c);
+    }
+   for (Element c : olds) {
+      rslt.removeChild(c);
+    }
+   for (Element c : IvyXml.children(delta)) {
+      rslt.appendChild(rslt.getOwnerDocument().importNode(c,true));
+    }
+
+   return rslt;
+}
+
+
+private static Set<String> getRemoveSet(String v)
+{
+   Set<String> rslt = new HashSet<>();
+   if (v == null) return rslt;
+
+   StringTokenizer tok = new StringTokenizer(v,", ");
+   while (tok.hasMoreTokens()) {
+      rslt.add(tok.nextToken());
+    }
+
+   return rslt;
+}
+
+
+private static <T extends Enum<T>> T getEnum(String v,T dflt)
+{
+   if (v == null || v.isEmpty()) return dflt;
+
+   try {
+      return Enum.valueOf(dflt.getDeclaringClass(),v);
+    }
+   catch (IllegalArgumentException e) { }
+
+   return dflt;
+}
+
+
+private static String getShortName(String nm)
+{
+   if (nm == null) return null;
+   int idx = nm.lastIndexOf(".");
+   if (idx >= 0) {
+      nm = nm.substring(idx+1);
+    }
+   return nm;
+}
+
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Fields extracted from a candidate                                       */
+/*                                                                              */
+/********************************************************************************/
+
+private static final class CandidateFields {
+
+   private String candidate_id;
+   private String candidate_state;
+   private String auto_query;
+   private long update_seq;
+   private boolean is_delta;
+   private String remove_list;
+   private boolean have_thread;
+   private String thread_id;
+   private String thread_name;
+   private boolean have_frame;
+   private String frame_id;
+   private String frame_class;
+   private String frame_method;
+   private String frame_line;
+   private String frame_file;
+   private boolean have_symptom;
+   private String symptom_type;
+   private String symptom_operator;
+   private String symptom_precision;
+   private String symptom_item;
+   private String symptom_original;
+   private String symptom_target;
+   private String symptom_user;
+   private boolean have_start;
+   private String start_frame_id;
+   private boolean have_response;
+   private String response_text;
+
+   CandidateFields() {
+      update_seq = -1;
+    }
+
+   CandidateFields(Element xml) {
+      candidate_id = IvyXml.getAttrString(xml,"ID");
+      candidate_state = IvyXml.getAttrString(xml,"STATE");
+      auto_query = IvyXml.getAttrString(xml,"AUTO_QUERY");
+      update_seq = getSequence(IvyXml.getAttrString(xml,"SEQ"));
+      is_delta = IvyXml.getAttrBool(xml,"DELTA");
+      remove_list = IvyXml.getAttrString(xml,"REMOVE");
+
+      Element thrd = IvyXml.getChild(xml,"THREAD");
+      have_thread = (thrd != null);
+      thread_id = IvyXml.getAttrString(thrd,"ID");
+      thread_name = IvyXml.getAttrString(thrd,"NAME");
+
+      Element frm = IvyXml.getChild(xml,"FRAME");
+      have_frame = (frm != null);
+      frame_id = IvyXml.getAttrString(frm,"ID");
+      frame_class = IvyXml.getAttrString(frm,"CLASS");
+      frame_method = IvyXml.getAttrString(frm,"METHOD");
+      frame_line = IvyXml.getAttrString(frm,"LINE");
+      frame_file = IvyXml.getAttrString(frm,"FILE");
+
+      Element symp = IvyXml.getChild(xml,"SYMPTOM");
+      have_symptom = (symp != null);
+      symptom_type = IvyXml.getAttrString(symp,"TYPE");
+      symptom_operator = IvyXml.getAttrString(symp,"OPERATOR");
+      symptom_precision = IvyXml.getAttrString(symp,"PRECISION");
+      symptom_item = IvyXml.getTextElement(symp,"ITEM");
+      symptom_original = IvyXml.getTextElement(symp,"ORIGINAL");
+      symptom_target = IvyXml.getTextElement(symp,"TARGET");
+      symptom_user = IvyXml.getTextElement(symp,"USER");
+
+      Element sfrm = IvyXml.getChild(IvyXml.getChild(xml,"STARTFRAME"),"FRAME");
+      have_start = (IvyXml.getChild(xml,"STARTFRAME") != null);
+      start_frame_id = IvyXml.getAttrString(sfrm,"ID");
+
+      have_response = (IvyXml.getChild(xml,"RESPONSE") != null);
+      response_text = IvyXml.getTextElement(xml,"RESPONSE");
+    }
+
+   /**
+    *   Merge a delta into the fields of the previous snapshot.  Attributes
+    *   missing from the delta and sub-elements it does not mention keep
+    *   their previous values.
+    **/
+
+   CandidateFields(CandidateFields base,CandidateFields delta) {
+      Set<String> drop = getRemoveSet(delta.remove_list);
+
+      candidate_id = base.candidate_id;
+      candidate_state = (delta.candidate_state != null ? delta.candidate_state :
+            base.candidate_state);
+      auto_query = (delta.auto_query != null ? delta.auto_query : base.auto_query);
+      update_seq = delta.update_seq;
+      is_delta = false;
+      remove_list = null;
+
+      CandidateFields src = pick(base,delta,delta.have_thread,drop.contains("THREAD"));
+      have_thread = src.have_thread;
+      thread_id = src.thread_id;
+      thread_name = src.thread_name;
+
+      src = pick(base,delta,delta.have_frame,drop.contains("FRAME"));
+      have_frame = src.have_frame;
+      frame_id = src.frame_id;
+      frame_class = src.frame_class;
+      frame_method = src.frame_method;
+      frame_line = src.frame_line;
+      frame_file = src.frame_file;
+
+      src = pick(base,delta,delta.have_symptom,drop.contains("SYMPTOM"));
+      have_symptom = src.have_symptom;
+      symptom_type = src.symptom_type;
+      symptom_operator = src.symptom_operator;
+      symptom_precision = src.symptom_precision;
+      symptom_item = src.symptom_item;
+      symptom_original = src.symptom_original;
+      symptom_target = src.symptom_target;
+      symptom_user = src.symptom_user;
+
+      src = pick(base,delta,delta.have_start,drop.contains("STARTFRAME"));
+      have_start = src.have_start;
+      start_frame_id = src.start_frame_id;
+
+      src = pick(base,delta,delta.have_response,drop.contains("RESPONSE"));
+      have_response = src.have_response;
+      response_text = src.response_text;
+    }
+
+   private static CandidateFields pick(CandidateFields base,CandidateFields delta,
+         boolean indelta,boolean removed) {
+      // a removed element is empty in the delta
+      if (indelta || removed) return delta;
+      return base;
+    }
+
+   private static long getSequence(String v) {
+      if (v == null) return -1;
+      try {
+         return Long.parseLong(v);
+       }
+      catch (NumberFormatException e) {
+         return -1;
+       }
+    }
+
+   /**
+    *   Read the first CANDIDATE element in the text.  Only the first of
+    *   each child element is used, as with IvyXml.getChild().
+    **/
+
+   boolean read(String text) throws XMLStreamException {
+      XMLStreamReader rdr = BirdXmlReader.createReader(text);
+      try {
+         int depth = 0;
+         int cdepth = -1;
+         String parent = null;
+         while (rdr.hasNext()) {
+            int evt = rdr.next();
+            if (evt == XMLStreamConstants.END_ELEMENT) {
+               if (depth == cdepth) return true;
+               if (depth == cdepth + 1) parent = null;
+               --depth;
+               continue;
+             }
+            if (evt != XMLStreamConstants.START_ELEMENT) continue;
+            ++depth;
+            String nm = rdr.getLocalName();
+            if (cdepth < 0) {
+               if (nm.equals("CANDIDATE")) {
+                  cdepth = depth;
+                  candidate_id = rdr.getAttributeValue(null,"ID");
+                  candidate_state = rdr.getAttributeValue(null,"STATE");
+                  auto_query = rdr.getAttributeValue(null,"AUTO_QUERY");
+                  update_seq = getSequence(rdr.getAttributeValue(null,"SEQ"));
+                  is_delta = BirdXmlReader.getBoolean(rdr.getAttributeValue(null,"DELTA"));
+                  remove_list = rdr.getAttributeValue(null,"REMOVE");
+                }
+             }
+            else if (depth == cdepth + 1) {
+               parent = nm;
+               if (readChild(rdr,nm)) {
+                  parent = null;
+                  --depth;
+                }
+             }
+            else if (depth == cdepth + 2 && parent != null) {
+               if (readGrandChild(rdr,parent,nm)) --depth;
+             }
+          }
+         return cdepth >= 0;
+       }
+      finally {
+         BirdXmlReader.closeReader(rdr);
+       }
+    }
+
+   private boolean readChild(XMLStreamReader rdr,String nm) throws XMLStreamException {
+      switch (nm) {
+         case "THREAD" :
+            if (!have_thread) {
+               have_thread = true;
+               thread_id = rdr.getAttributeValue(null,"ID");
+               thread_name = rdr.getAttributeValue(null,"NAME");
+             }
+            break;
+         case "FRAME" :
+            if (!have_frame) {
+               have_frame = true;
+               frame_id = rdr.getAttributeValue(null,"ID");
+               frame_class = rdr.getAttributeValue(null,"CLASS");
+               frame_method = rdr.getAttributeValue(null,"METHOD");
+               frame_line = rdr.getAttributeValue(null,"LINE");
+               frame_file = rdr.getAttributeValue(null,"FILE");
+             }
+            break;
+         case "SYMPTOM" :
+            if (!have_symptom) {
+               have_symptom = true;
+               symptom_type = rdr.getAttributeValue(null,"TYPE");
+               symptom_operator = rdr.getAttributeValue(null,"OPERATOR");
+               symptom_precision = rdr.getAttributeValue(null,"PRECISION");
+             }
+            break;
+         case "STARTFRAME" :
+            have_start = true;
+            break;
+         case "RESPONSE" :
+            if (!have_response) {
+               have_response = true;
+               response_text = BirdXmlReader.readText(rdr);
+               return true;
+             }
+            break;
+         default :
+            break;
+       }
+      return false;
+    }
+
+   private boolean readGrandChild(XMLStreamReader rdr,String par,String nm)
+         throws XMLStreamException {
+      if (par.equals("STARTFRAME")) {
+         if (nm.equals("FRAME") && start_frame_id == null) {
+            start_frame_id = rdr.getAttributeValue(null,"ID");
+          }
+         return false;
+       }
+      if (!par.equals("SYMPTOM")) return false;
+
+      switch (nm) {
+         case "ITEM" :
+            if (symptom_item != null) return false;
+            symptom_item = BirdXmlReader.readText(rdr);
+            break;
+         case "ORIGINAL" :
+            if (symptom_original != null) return false;
+            symptom_original = BirdXmlReader.readText(rdr);
+            break;
+         case "TARGET" :
+            if (symptom_target != null) return false;
+            symptom_target = BirdXmlReader.readText(rdr);
+            break;
+         case "USER" :
+            if (symptom_user != null) return false;
+            symptom_user = BirdXmlReader.readText(rdr);
+            break;
+         default :
+            return false;
+       }
+      return true;
+    }
+
+}       // end of inner class CandidateFields
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Saved source file hash                                                  */
+/*                                                                              */
+/********************************************************************************/
+
+private static final class SourceHash {
+
+   private long last_modified;
+   private long hash_value;
+
+   SourceHash(long dlm,long h) {
+      last_modified = dlm;
+      hash_value = h;
+    }
+
+}       // end of inner class SourceHash
+
+
+}       // end of class BirdCandidate
+
+
+
+
+/* end of BirdCandidate.java */
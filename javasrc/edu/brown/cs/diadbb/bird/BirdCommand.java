@@ -0,0 +1,107 @@
+/********************************************************************************/
+/*                                                                              */
+/*              BirdCommand.java                                                */
+/*                                                                              */
+/*      Single DIAD command for use in a batch                                  */
+/*                                                                              */
+/********************************************************************************/
+/*      Copyright 2025 Brown University -- Steven P. Reiss                    */
+/*********************************************************************************
+ *  Copyright 2025, Brown University, Providence, RI.                            *
+ *                                                                               *
+ *                        All Rights Reserved                                    *
+ *                                                                               *
+ * This program and the accompanying materials are made available under the      *
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution, *
+ * and is available at                                                           *
+ *      http://www.eclipse.org/legal/epl-v10.html                                *
+ *                                                                               *
+ ********************************************************************************/
+
+
+
+package edu.brown.cs.diadbb.bird;
+
+import java.util.Map;
+
+import edu.brown.cs.ivy.mint.MintConstants.CommandArgs;
+import edu.brown.cs.ivy.xml.IvyXmlWriter;
+
+class BirdCommand implements BirdConstants
+{
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Private Storage                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+private String          command_name;
+private CommandArgs     command_args;
+private String          command_body;
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Constructors                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+BirdCommand(String cmd,CommandArgs args,String body)
+{
+   command_name = cmd;
+   command_args = args;
+   command_body = body;
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Access methods                                                          */
+/*                                                                              */
+/********************************************************************************/
+
+String getCommand()                             { return command_name; }
+CommandArgs getArgs()                           { return command_args; }
+String getBody()                                { return command_body; }
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Output methods                                                          */
+/*                                                                              */
+/********************************************************************************/
+
+void outputXml(IvyXmlWriter xw,int idx)
+{
+   xw.begin("COMMAND");
+   xw.field("DO",command_name);
+   xw.field("INDEX",idx);
+   if (command_args != null) {
+      for (Map.Entry<String,Object> ent : command_args.entrySet()) {
+         xw.field(ent.getKey(),ent.getValue());
+       }
+    }
+   if (command_body != null) {
+      xw.xmlText(command_body);
+    }
+   xw.end("COMMAND");
+}
+
+
+@Override public String toString()
+{
+   return command_name;
+}
+
+
+}       // end of class BirdCommand
+
+
+
+
+/* end of BirdCommand.java */
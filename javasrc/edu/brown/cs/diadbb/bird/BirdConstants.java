@@ -50,6 +50,21 @@ enum DiadCandidateState {
 }
 
 
+/**
+ *      Kinds of change between two successive updates of a candidate
+ **/
+
+enum DiadCandidateChange {
+   NEW,
+   STATE,
+   SYMPTOM,
+   LOCATION,
+   START_FRAME,
+   RESPONSE,
+   THREAD,
+}
+
+
 enum DiadSymptomType {
    NONE,
    EXCEPTION,
@@ -83,6 +98,49 @@ interface ResponseHandler {
 }
 
 
+/**
+ *      Handler for a deferred reply that DIAD may send in pieces.  Partial
+ *      chunks arrive in order with the same request id; the final reply
+ *      is still delivered through handleResponse.
+ **/
+
+interface StreamHandler extends ResponseHandler {
+   void handlePartial(String text);
+}
+
+
+/**
+ *      Handler that needs to know when its request is cancelled.  It
+ *      returns true if the request had already been sent to DIAD.
+ **/
+
+interface CancelHandler {
+   boolean handleCancel();
+}
+
+
+/**
+ *      Health of a server as seen by the heartbeat
+ **/
+
+enum BirdServerState {
+   UNKNOWN,
+   UP,
+   SUSPECT,
+   DOWN,
+}
+
+
+/**
+ *      Listener for changes in the health of DIAD or LIMBA.  It is called
+ *      on the heartbeat thread.
+ **/
+
+interface BirdHealthListener {
+   void healthChanged(BirdServerState diad,BirdServerState limba);
+}
+
+
 /**
  *      Set of debug instances for a bubble
  **/ 
@@ -92,6 +150,7 @@ interface BirdDebugSet {
    void addDebugInstance(BirdInstance inst);
    void updateDebugInstance(BirdInstance inst);
    void removeDebugInstance(BirdInstance inst);
+   boolean showsDebugInstance(BirdInstance inst);
    boolean isIdRelevant(String id);
    
 }
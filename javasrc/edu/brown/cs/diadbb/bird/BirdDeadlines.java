@@ -0,0 +1,239 @@
+/********************************************************************************/
+/*                                                                              */
+/*              BirdDeadlines.java                                              */
+/*                                                                              */
+/*      Per-command adaptive timeouts for DIAD messages                         */
+/*                                                                              */
+/********************************************************************************/
+/*      Copyright 2025 Brown University -- Steven P. Reiss                    */
+/*********************************************************************************
+ *  Copyright 2025, Brown University, Providence, RI.                            *
+ *                                                                               *
+ *                        All Rights Reserved                                    *
+ *                                                                               *
+ * This program and the accompanying materials are made available under the      *
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution, *
+ * and is available at                                                           *
+ *      http://www.eclipse.org/legal/epl-v10.html                                *
+ *                                                                               *
+ ********************************************************************************/
+
+
+
+package edu.brown.cs.diadbb.bird;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.StringTokenizer;
+
+import edu.brown.cs.bubbles.board.BoardProperties;
+
+/**
+ *      Commands are grouped into deadline classes in Bird.props.  Each
+ *      class gives a minimum and maximum timeout; within those bounds the
+ *      timeout for a command is a multiple of a high percentile of its
+ *      recently observed latencies.  Until enough samples have been seen
+ *      the maximum is used.
+ **/
+
+class BirdDeadlines implements BirdConstants
+{
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Private Storage                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+private Map<String,DeadlineClass> command_classes;
+private DeadlineClass   default_class;
+private DeadlineClass   reply_class;
+private Map<String,LatencyRecord> latency_map;
+private int             latency_percentile;
+private int             latency_factor;
+
+private static final int MIN_SAMPLES = 8;
+private static final int MAX_SAMPLES = 64;
+private static final String REPLY_SUFFIX = "/REPLY";
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Constructors                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+BirdDeadlines(BoardProperties bp)
+{
+   command_classes = new HashMap<>();
+   latency_map = new HashMap<>();
+   latency_percentile = bp.getInt("Bird.timeout.percentile",99);
+   latency_factor = bp.getInt("Bird.timeout.factor",3);
+
+   Map<String,DeadlineClass> classes = new HashMap<>();
+   String cls = bp.getProperty("Bird.timeout.classes","FAST,NORMAL,ANALYSIS,LLM");
+   StringTokenizer tok = new StringTokenizer(cls,", ");
+   while (tok.hasMoreTokens()) {
+      String nm = tok.nextToken();
+      String pfx = "Bird.timeout." + nm;
+      DeadlineClass dc = new DeadlineClass(nm,
+            bp.getInt(pfx + ".min",5) * 1000L,
+            bp.getInt(pfx + ".max",60) * 1000L);
+      classes.put(nm,dc);
+      String cmds = bp.getProperty(pfx + ".commands");
+      if (cmds == null) continue;
+      StringTokenizer ctok = new StringTokenizer(cmds,", ");
+      while (ctok.hasMoreTokens()) {
+         command_classes.put(ctok.nextToken(),dc);
+       }
+    }
+
+   default_class = classes.get(bp.getProperty("Bird.timeout.default","NORMAL"));
+   if (default_class == null) default_class = new DeadlineClass("NORMAL",5000,60000);
+   reply_class = classes.get(bp.getProperty("Bird.timeout.reply","LLM"));
+   if (reply_class == null) reply_class = new DeadlineClass("LLM",60000,900000);
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Timeout methods                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Return the time to wait for the direct reply to a command.
+ **/
+
+long getTimeout(String cmd)
+{
+   DeadlineClass dc = command_classes.get(cmd);
+   if (dc == null) dc = default_class;
+
+   return computeTimeout(cmd,dc);
+}
+
+
+/**
+ *      Return the time to wait for the deferred DIADREPLY to a command.
+ **/
+
+long getReplyTimeout(String cmd)
+{
+   String key = cmd + REPLY_SUFFIX;
+   DeadlineClass dc = command_classes.get(key);
+   if (dc == null) dc = reply_class;
+
+   return computeTimeout(key,dc);
+}
+
+
+void noteLatency(String cmd,long time)
+{
+   getRecord(cmd).addSample(time);
+}
+
+
+void noteReplyLatency(String cmd,long time)
+{
+   getRecord(cmd + REPLY_SUFFIX).addSample(time);
+}
+
+
+private long computeTimeout(String key,DeadlineClass dc)
+{
+   long lat = getRecord(key).getPercentile(latency_percentile);
+   if (lat < 0) return dc.getMaximum();
+
+   long t = lat * latency_factor;
+   t = Math.max(dc.getMinimum(),Math.min(dc.getMaximum(),t));
+
+   return t;
+}
+
+
+private synchronized LatencyRecord getRecord(String key)
+{
+   LatencyRecord lr = latency_map.get(key);
+   if (lr == null) {
+      lr = new LatencyRecord();
+      latency_map.put(key,lr);
+    }
+   return lr;
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Deadline class                                                          */
+/*                                                                              */
+/********************************************************************************/
+
+private static final class DeadlineClass {
+
+   private String class_name;
+   private long min_timeout;
+   private long max_timeout;
+
+   DeadlineClass(String nm,long min,long max) {
+      class_name = nm;
+      min_timeout = min;
+      max_timeout = Math.max(min,max);
+    }
+
+   long getMinimum()                            { return min_timeout; }
+   long getMaximum()                            { return max_timeout; }
+
+   @Override public String toString()           { return class_name; }
+
+}       // end of inner class DeadlineClass
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Latency samples for a command                                           */
+/*                                                                              */
+/********************************************************************************/
+
+private static final class LatencyRecord {
+
+   private long [] latency_samples;
+   private int num_samples;
+   private int next_sample;
+
+   LatencyRecord() {
+      latency_samples = new long[MAX_SAMPLES];
+      num_samples = 0;
+      next_sample = 0;
+    }
+
+   synchronized void addSample(long time) {
+      latency_samples[next_sample] = time;
+      next_sample = (next_sample + 1) % MAX_SAMPLES;
+      if (num_samples < MAX_SAMPLES) ++num_samples;
+    }
+
+   synchronized long getPercentile(int pct) {
+      if (num_samples < MIN_SAMPLES) return -1;
+      long [] vals = Arrays.copyOf(latency_samples,num_samples);
+      Arrays.sort(vals);
+      int idx = (num_samples * pct + 99) / 100 - 1;
+      idx = Math.max(0,Math.min(num_samples-1,idx));
+      return vals[idx];
+    }
+
+}       // end of inner class LatencyRecord
+
+
+}       // end of class BirdDeadlines
+
+
+
+
+/* end of BirdDeadlines.java */
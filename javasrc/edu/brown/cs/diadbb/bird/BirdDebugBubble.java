@@ -22,6 +22,7 @@
 
 package edu.brown.cs.diadbb.bird;
 
+import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
@@ -29,15 +30,21 @@ import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
 import java.awt.event.MouseEvent;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.function.Consumer;
 
 import javax.swing.AbstractAction;
+import javax.swing.JLabel;
 import javax.swing.JOptionPane;
+import javax.swing.JPanel;
 import javax.swing.JPopupMenu;
 import javax.swing.JTabbedPane;
+import javax.swing.SwingUtilities;
 
 import org.w3c.dom.Element;
 
@@ -62,6 +69,7 @@ class BirdDebugBubble extends BudaBubble implements BddtConstants.BddtAuxBubble,
 /********************************************************************************/
 
 private DebugTabs       debug_tabs;
+private HealthLabel     health_label;
 private Map<String,BirdDebugPanel> active_panels;
 private Dimension       preferred_size;
 
@@ -84,13 +92,26 @@ BirdDebugBubble(BirdFactory fac,Object lid)
    preferred_size = new Dimension(w,h);
    debug_tabs = new DebugTabs();
    active_panels = new HashMap<>();
-   setContentPane(debug_tabs);
+
+   BirdHealth health = fac.getServerHealth();
+   health_label = new HealthLabel();
+   health_label.healthChanged(health.getDiadState(),health.getLimbaState());
+   health.addHealthListener(health_label);
+
+   JPanel pnl = new JPanel(new BorderLayout());
+   pnl.add(debug_tabs,BorderLayout.CENTER);
+   pnl.add(health_label,BorderLayout.SOUTH);
+   setContentPane(pnl);
 }
 
 
 
 @Override public void localDispose() 
-{ }
+{
+   BirdFactory fac = BirdFactory.getFactory();
+   fac.getServerHealth().removeHealthListener(health_label);
+   fac.removeDebugSet(this);
+}
 
 
 
@@ -148,6 +169,13 @@ BirdDebugBubble(BirdFactory fac,Object lid)
 
 
 
+@Override public boolean showsDebugInstance(BirdInstance bi)
+{
+   return active_panels.get(bi.getId()) != null;
+}
+
+
+
 private int findPanelIndex(BirdDebugPanel pnl)
 {
    for (int i = 0; i < debug_tabs.getTabCount(); ++i) {
@@ -236,6 +264,64 @@ private class DebugTabs extends JTabbedPane {
 
 
 
+/********************************************************************************/
+/*                                                                              */
+/*      Server health display                                                   */
+/*                                                                              */
+/********************************************************************************/
+
+private static final class HealthLabel extends JLabel
+      implements BirdHealthListener, Runnable {
+
+   private BirdServerState diad_state;
+   private BirdServerState limba_state;
+
+   private static final long serialVersionUID = 1;
+
+   HealthLabel() {
+      diad_state = BirdServerState.UNKNOWN;
+      limba_state = BirdServerState.UNKNOWN;
+    }
+
+   @Override public void healthChanged(BirdServerState diad,BirdServerState limba) {
+      synchronized (this) {
+         diad_state = diad;
+         limba_state = limba;
+       }
+      SwingUtilities.invokeLater(this);
+    }
+
+   @Override public void run() {
+      BirdServerState diad;
+      BirdServerState limba;
+      synchronized (this) {
+         diad = diad_state;
+         limba = limba_state;
+       }
+      setText("DIAD: " + getStateName(diad) + "    LIMBA: " + getStateName(limba));
+      if (diad == BirdServerState.DOWN || limba == BirdServerState.DOWN) {
+         setToolTipText("Requests that need a server that is down fail at once");
+       }
+      else setToolTipText(null);
+    }
+
+   private String getStateName(BirdServerState st) {
+      switch (st) {
+         case UP :
+            return "up";
+         case SUSPECT :
+            return "not responding";
+         case DOWN :
+            return "down";
+         default :
+            return "starting";
+       }
+    }
+
+}       // end of inner class HealthLabel
+
+
+
 /********************************************************************************/
 /*                                                                              */
 /*      Setting parameters                                                      */
@@ -251,24 +337,35 @@ private final class ParameterAction extends AbstractAction {
     }
    
    @Override public void actionPerformed(ActionEvent evt) {
-      ParameterDialog pd = new ParameterDialog();
-      pd.process();
+      BirdFactory bf = BirdFactory.getFactory();
+      List<BirdCommand> cmds = new ArrayList<>();
+      cmds.add(new BirdCommand("PARAMETER",null,null));
+      cmds.add(new BirdCommand("SETMODEL",null,null));
+      bf.sendBatch(cmds).thenAcceptAsync(new ParameterLoader(),bf.getSwingExecutor());
     }
 
 }       // end of inner class ParameterAction
 
 
+private final class ParameterLoader implements Consumer<List<Element>> {
+   
+   @Override public void accept(List<Element> rslts) {
+      ParameterDialog pd = new ParameterDialog(rslts.get(0),rslts.get(1));
+      pd.process();
+    }
+   
+}       // end of inner class ParameterLoader
+
+
 private class ParameterDialog extends SwingGridPanel {
    
    private static final long serialVersionUID = 1;
    
-   ParameterDialog() {
-      Element parms = BirdFactory.getFactory().sendDiadMessage("PARAMETER",null,null);
+   ParameterDialog(Element parms,Element msxml) {
       DiadFileMode mode = IvyXml.getAttrEnum(parms,"FILEMODE",DiadFileMode.FAIT_FILES);
       int maxstep = IvyXml.getAttrInt(parms,"SEEDE_STEPS",1000000);
       int maxdepth = IvyXml.getAttrInt(parms,"SEEDE_DEPTH",100);
       boolean autoquery = IvyXml.getAttrBool(parms,"AUTO_QUERY");
-      Element msxml= BirdFactory.getFactory().sendDiadMessage("SETMODEL",null,null);
       Set<String> mdls = new TreeSet<>();
       String curmdl = IvyXml.getAttrString(parms,"MODEL");
       Element top = msxml;
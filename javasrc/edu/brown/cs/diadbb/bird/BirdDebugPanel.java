@@ -36,10 +36,14 @@ import java.io.IOException;
 import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -54,6 +58,7 @@ import javax.swing.JScrollPane;
 import javax.swing.JSplitPane;
 import javax.swing.JTextField;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.html.HTMLDocument;
@@ -110,6 +115,10 @@ private boolean         doing_query;
 private Boolean         initial_response;
 private boolean         have_explanation;
 private boolean         auto_scroll;
+private boolean         stream_responses;
+private int             stream_delay;
+private int             stream_counter;
+private Map<String,QueryTracker> active_queries;
 
 
 private static final Pattern HUNK_HEADER_PATTERN = 
@@ -145,6 +154,10 @@ BirdDebugPanel(BirdInstance bi)
    have_explanation = false;
    BoardProperties bp = BoardProperties.getProperties("Bird");
    auto_scroll = bp.getBoolean("Bird.panel.auto.scroll",true);
+   stream_responses = bp.getBoolean("Bird.stream",true);
+   stream_delay = bp.getInt("Bird.stream.frame",33);
+   stream_counter = 0;
+   active_queries = new HashMap<>();
    
    setupPanel();
 }
@@ -175,8 +188,15 @@ void updateInstance()
    BoardLog.logD("BIRD","Update instance " + initial_response + " " +
          getInstanceState());
    
-   location_text.setText(for_instance.getLocationString());
-   symptom_text.setText(for_instance.getSymptomString());
+   EnumSet<DiadCandidateChange> chng = for_instance.getLastChanges();
+   if (chng.contains(DiadCandidateChange.NEW) || 
+         chng.contains(DiadCandidateChange.LOCATION)) {
+      location_text.setText(for_instance.getLocationString());
+    }
+   if (chng.contains(DiadCandidateChange.NEW) || 
+         chng.contains(DiadCandidateChange.SYMPTOM)) {
+      symptom_text.setText(for_instance.getSymptomString());
+    }
    
    if (initial_response == Boolean.FALSE) {
       String resp = for_instance.getResponse();
@@ -262,7 +282,35 @@ void updateInstance()
 
 
 void dispose()
-{ }
+{
+   cancelQueries();
+   BirdFactory.getFactory().cancelPrefetch(for_instance.getId());
+}
+
+
+/**
+ *      Cancel any queries from this panel that are still outstanding.  The
+ *      handlers of cancelled queries are never called, so the panel stops
+ *      waiting for them here.
+ **/
+
+private void cancelQueries()
+{
+   List<QueryTracker> trks;
+   synchronized (active_queries) {
+      trks = new ArrayList<>(active_queries.values());
+      active_queries.clear();
+    }
+
+   boolean cancelled = false;
+   for (QueryTracker trk : trks) {
+      if (trk.cancel()) cancelled = true;
+    }
+   if (!cancelled) return;
+
+   doing_query = false;
+   updateInstance();
+}
 
 
 private class DisplayResponse implements Runnable {
@@ -459,6 +507,38 @@ private void appendOutput(String s)
 }
 
 
+/**
+ *      Streamed text is shown unformatted until the final response arrives,
+ *      so just protect the HTML document from it.
+ **/
+
+private static String getStreamHtml(String text)
+{
+   StringBuffer buf = new StringBuffer();
+   for (int i = 0; i < text.length(); ++i) {
+      char c = text.charAt(i);
+      switch (c) {
+         case '<' :
+            buf.append("&lt;");
+            break;
+         case '>' :
+            buf.append("&gt;");
+            break;
+         case '&' :
+            buf.append("&amp;");
+            break;
+         case '\n' :
+            buf.append("<br>");
+            break;
+         default :
+            buf.append(c);
+            break;
+       }
+    }
+   return buf.toString();
+}
+
+
 private void scrollToBottom()
 {
    if (!auto_scroll) return;
@@ -524,8 +604,17 @@ private final class StartFrameAction extends AbstractAction {
    
    @Override public void actionPerformed(ActionEvent evt) {
       CommandArgs args = new CommandArgs("DEBUGID",for_instance.getId());
-      Element xml = BirdFactory.getFactory().sendDiadMessage("STARTFRAME",
-            args,null);
+      BirdFactory bf = BirdFactory.getFactory();
+      bf.sendDiadMessageAsync("STARTFRAME",args,null)
+         .thenAcceptAsync(new StartFrameChooser(),bf.getSwingExecutor());
+    }
+   
+}       // end of inner class StartFrameAction
+
+
+private final class StartFrameChooser implements Consumer<Element> {
+   
+   @Override public void accept(Element xml) {
       List<FrameElement> choices = new ArrayList<>();
       FrameElement sel = null;
       String sid = for_instance.getStartFrameId(); 
@@ -548,13 +637,13 @@ private final class StartFrameAction extends AbstractAction {
       
       FrameElement fe = (FrameElement) rslt;
       
-      args = new CommandArgs("DEBUGID",for_instance.getId(),
+      CommandArgs args = new CommandArgs("DEBUGID",for_instance.getId(),
             "FRAME",fe.getId());
-      BirdFactory.getFactory().sendDiadMessage("STARTFRAME",
+      BirdFactory.getFactory().sendDiadMessageAsync("STARTFRAME",
             args,null);
     }
    
-}       // end of inner class StartFrameAction
+}       // end of inner class StartFrameChooser
 
 
 private final class FrameElement {
@@ -615,7 +704,7 @@ private final class SymptomAction extends AbstractAction {
       String symp = xw.closeResult();
       CommandArgs args = new CommandArgs("DEBUGID",
             for_instance.getId());
-      bird.sendDiadMessage("SYMPTOM",args,symp);
+      bird.sendDiadMessageAsync("SYMPTOM",args,symp);
     }
    
 }       // end of inner class StartFrameAction
@@ -690,7 +779,7 @@ private final class SaveAction extends AbstractAction {
 
 
 
-private final class RestartAction extends AbstractAction {
+private final class RestartAction extends AbstractAction implements Runnable {
    
    private static final long serialVersionUID = 1;
    
@@ -699,11 +788,17 @@ private final class RestartAction extends AbstractAction {
     }
    
    @Override public void actionPerformed(ActionEvent evt) {
+      cancelQueries();
       CommandArgs args = new CommandArgs("DEBUGID",for_instance.getId());
-      BirdFactory.getFactory().sendDiadMessage("CLEARHISTORY",args,null);
+      BirdFactory bf = BirdFactory.getFactory();
+      bf.sendDiadMessageAsync("CLEARHISTORY",args,null)
+         .thenRunAsync(this,bf.getSwingExecutor());
+    }
+   
+   @Override public void run() {
       if (for_instance.getAutoQuery()) {
          ExplainAction exp = new ExplainAction();
-         exp.actionPerformed(evt);
+         exp.actionPerformed(null);
        }
     }
    
@@ -885,6 +980,8 @@ private final class RepairsAction extends AbstractAction implements ResponseHand
 
    private Collection<BirdFileEdit> repair_edits;
    private int num_retries;
+   private String query_type;
+   private String query_text;
    
    
    private static final long serialVersionUID = 1;
@@ -893,6 +990,8 @@ private final class RepairsAction extends AbstractAction implements ResponseHand
       super("Find Repairs");
       repair_edits = null;
       num_retries = 0;
+      query_type = null;
+      query_text = null;
     }
    
    @Override public void actionPerformed(ActionEvent evt) {
@@ -917,6 +1016,8 @@ private final class RepairsAction extends AbstractAction implements ResponseHand
        }
       String cnts = input_area.getText();
       if (cnts.isBlank()) cnts = null;
+      query_type = xcmd;
+      query_text = cnts;
       AskLimbaCommand cmd = new AskLimbaCommand(xcmd,cnts,this);
       cmd.start();
       String disp = "<div align='right'><p style='text-indent: 50px;'><font color='blue'>" + query + 
@@ -935,6 +1036,7 @@ private final class RepairsAction extends AbstractAction implements ResponseHand
        }
       Collection<BirdFileEdit> edits = new TreeSet<>();
       int delta = (num_retries == 0 ? 0 : 4);
+      boolean valid = true;
       try {
          for (Element patch : IvyXml.children(xml,"PATCH")) {
             Collection<BirdFileEdit> nedit = convertPatchToEdits(IvyXml.getText(patch),
@@ -943,6 +1045,7 @@ private final class RepairsAction extends AbstractAction implements ResponseHand
           }
        }
       catch (BirdException e) {
+         valid = false;
          if (num_retries++ < 3) {
             String msg = e.getMessage();
             String retry = "That is an invalid patch (line numbers or lines do not match" +
@@ -958,6 +1061,12 @@ private final class RepairsAction extends AbstractAction implements ResponseHand
          resp.handleResponse(xml);
        }
       else {
+         if (valid && num_retries == 0) {
+            // the patches apply, so this is worth giving for the original question;
+            // an answer to a retry was read with a different delta and doesn't count
+            BirdResponseCache cache = BirdFactory.getFactory().getResponseCache();
+            cache.putValidated(for_instance,query_type,query_text,xml0);
+          }
          repair_edits = edits;
          SwingUtilities.invokeLater(this);
        }
@@ -1202,12 +1311,45 @@ private final class SubmitAction implements ActionListener {
 }       // end of inner class SubmitAction
 
 
-private final class Responder implements ResponseHandler, Runnable {
+private final class Responder implements StreamHandler, Runnable, ActionListener {
    
    private String display_text;
+   private StringBuffer pending_text;
+   private StringBuffer partial_text;
+   private String stream_id;
+   private Timer frame_timer;
    
    Responder() {
       display_text = null;
+      pending_text = new StringBuffer();
+      partial_text = new StringBuffer();
+      stream_id = null;
+      frame_timer = new Timer(stream_delay,this);
+      frame_timer.setRepeats(false);
+    }
+   
+   @Override public void handlePartial(String text) {
+      if (text == null || text.isEmpty()) return;
+      boolean start = false;
+      synchronized (this) {
+         start = (pending_text.length() == 0);
+         pending_text.append(text);
+       }
+      // chunks arriving within one frame are shown with a single update
+      if (start) frame_timer.restart();
+    }
+   
+   @Override public void actionPerformed(ActionEvent evt) {
+      synchronized (this) {
+         if (display_text != null) return;
+         partial_text.append(pending_text);
+         pending_text.setLength(0);
+       }
+      String disp = "<p><font color='black'>" + 
+            getStreamHtml(partial_text.toString()) +
+            "</font></p>";
+      showStream(disp);
+      scrollToBottom();
     }
    
    @Override public void handleResponse(Element xml) { 
@@ -1222,7 +1364,11 @@ private final class Responder implements ResponseHandler, Runnable {
          text = "???";
        }
       
-      display_text = IvyFormat.formatText(text);
+      synchronized (this) {
+         display_text = IvyFormat.formatText(text);
+         pending_text.setLength(0);
+       }
+      frame_timer.stop();
       
       SwingUtilities.invokeLater(this);
     }
@@ -1231,49 +1377,170 @@ private final class Responder implements ResponseHandler, Runnable {
    @Override public void run() {
       doing_query = false;
       updateInstance();
-      String disp = "<div align='left'><p><font color='black'>" + display_text +
-         "</font></p></div>";
-      appendOutput(disp);    
+      String disp = "<p><font color='black'>" + display_text + "</font></p>";
+      if (stream_id != null) {
+         // replace the streamed text with the formatted response
+         showStream(disp);
+       }
+      else {
+         disp = "<div align='left'>" + disp + "</div>";
+         appendOutput(disp);    
+       }
+    }
+   
+   private void showStream(String disp) {
+      HTMLDocument doc = (HTMLDocument) log_pane.getDocument();
+      javax.swing.text.Element div = null;
+      if (stream_id != null) div = doc.getElement(stream_id);
+      if (div == null) {
+         stream_id = "BirdStream" + (++stream_counter);
+         appendOutput("<div id='" + stream_id + "' align='left'>" + disp + "</div>");
+         return;
+       }
+      try {
+         doc.setInnerHTML(div,disp);
+       }
+      catch (BadLocationException | IOException e) {
+         BoardLog.logE("BIRD","Problem updating streamed output",e);
+       }
     }
 
 }       // end of inner class Responder
 
 
-private final class AskLimbaCommand extends Thread {
+private final class AskLimbaCommand implements Runnable {
    
     private String query_type;
     private String query_value;
     private ResponseHandler response_handler;
+    private boolean cache_checked;
    
     AskLimbaCommand(String typ,String value) {
        this(typ,value,null);
      }
     
     AskLimbaCommand(String typ,String value,ResponseHandler resp) {
-       super("AskLimba_" + typ + "_Thread");
        query_type = typ;
        query_value = value;
        if (resp == null) {
           resp = new Responder();
         }
        response_handler = resp;
+       cache_checked = false;
+     }
+    
+    void start() {
+       // the command is queued in the candidate's pipeline, so this does not block
+       if (SwingUtilities.isEventDispatchThread()) run();
+       else SwingUtilities.invokeLater(this);
      }
     
     @Override public void run() {
        CommandArgs args = new CommandArgs("DEBUGID",for_instance.getId(),
              "TYPE",query_type); 
+       if (stream_responses && response_handler instanceof StreamHandler) {
+          args.put("STREAM",true);
+        }
        String what = (query_value == null ? null : "QUESTION");
-       doing_query = true;
-       updateInstance();
-       for_instance.setShouldSave(true);
-       BirdFactory.getFactory().issueCommand("ASKLIMBA",args,
-             what,query_value,response_handler);
+       BirdFactory bf = BirdFactory.getFactory();
+       BirdResponseCache cache = bf.getResponseCache();
+       if (!cache_checked) {
+          // the store is checked in the background, which runs this again on a miss
+          cache_checked = true;
+          doing_query = true;
+          updateInstance();
+          for_instance.setShouldSave(true);
+          if (cache.lookup(for_instance,query_type,query_value,response_handler)) return;
+          if (cache.lookupStore(for_instance,query_type,query_value,response_handler,this)) return;
+        }
+       // registered first since the handler can be called before issueCommand returns
+       QueryTracker trk = new QueryTracker(query_type,response_handler);
+       trk.register();
+       ResponseHandler hdlr = cache.getCachingHandler(for_instance,query_type,
+             query_value,trk);
+       String rid = bf.issueCommand("ASKLIMBA",args,what,query_value,hdlr);
+       trk.setRequestId(rid);
      }
     
 }       // end of inner class AskLimbaCommand
 
 
 
+/**
+ *      Keep track of the outstanding query of each type so it can be
+ *      cancelled when the panel goes away or a newer query replaces it.
+ **/
+
+private final class QueryTracker implements StreamHandler {
+
+   private String query_type;
+   private String request_id;
+   private ResponseHandler response_handler;
+   private boolean is_done;
+   private boolean is_cancelled;
+
+   QueryTracker(String typ,ResponseHandler hdlr) {
+      query_type = typ;
+      request_id = null;
+      response_handler = hdlr;
+      is_done = false;
+      is_cancelled = false;
+    }
+
+   void register() {
+      QueryTracker old = null;
+      synchronized (active_queries) {
+         old = active_queries.put(query_type,this);
+       }
+      if (old != null) old.cancel();
+    }
+
+   void setRequestId(String rid) {
+      synchronized (active_queries) {
+         // an answer that came back during issueCommand is not tracked
+         if (is_done || rid == null) return;
+         request_id = rid;
+         if (!is_cancelled) return;
+       }
+      BirdFactory.getFactory().cancelCommand(rid);
+    }
+
+   /**
+    *      Cancel the query if it is still outstanding.  Returns true if it was.
+    **/
+
+   boolean cancel() {
+      String rid = null;
+      synchronized (active_queries) {
+         if (is_done || is_cancelled) return false;
+         is_cancelled = true;
+         rid = request_id;
+       }
+      // without an id yet, setRequestId cancels it
+      if (rid != null) BirdFactory.getFactory().cancelCommand(rid);
+      return true;
+    }
+
+   @Override public void handlePartial(String text) {
+      if (response_handler instanceof StreamHandler) {
+         StreamHandler shdlr = (StreamHandler) response_handler;
+         shdlr.handlePartial(text);
+       }
+    }
+   
+   @Override public void handleResponse(Element xml) {
+      synchronized (active_queries) {
+         if (is_done || is_cancelled) return;
+         is_done = true;
+         active_queries.remove(query_type,this);
+       }
+      response_handler.handleResponse(xml);
+    }
+   
+}       // end of inner class QueryTracker
+
+
+
 private final class TestCaseAction extends AbstractAction implements ResponseHandler, Runnable {
    
    private BirdTestCaseBubble test_bubble;
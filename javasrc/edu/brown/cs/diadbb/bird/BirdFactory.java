@@ -23,7 +23,6 @@ package edu.brown.cs.diadbb.bird;
 
 
 import edu.brown.cs.ivy.exec.IvyExec;
-import edu.brown.cs.ivy.exec.IvyExecQuery;
 import edu.brown.cs.ivy.file.IvyFile;
 import edu.brown.cs.ivy.mint.MintArguments;
 import edu.brown.cs.ivy.mint.MintConstants;
@@ -31,18 +30,34 @@ import edu.brown.cs.ivy.mint.MintControl;
 import edu.brown.cs.ivy.mint.MintDefaultReply;
 import edu.brown.cs.ivy.mint.MintHandler;
 import edu.brown.cs.ivy.mint.MintMessage;
+import edu.brown.cs.ivy.mint.MintReply;
 import edu.brown.cs.ivy.xml.IvyXml;
 import edu.brown.cs.ivy.xml.IvyXmlWriter;
 
 import java.awt.Point;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.zip.CRC32;
 
 import javax.swing.AbstractAction;
 import javax.swing.JPopupMenu;
@@ -79,16 +94,42 @@ public final class BirdFactory implements BirdConstants, MintConstants
 /*                                                                              */
 /********************************************************************************/
 
-private boolean diad_running;
-private boolean diad_started;
-private boolean limba_running;
-private boolean limba_started;
+private volatile boolean diad_running;
+private volatile boolean diad_started;
+private volatile boolean limba_running;
+private volatile boolean limba_started;
 private Map<String,BirdInstance> instance_map;
-private Map<String,ResponseHandler> hdlr_map;
+private BirdReplyRegistry reply_registry;
+private BirdDeadlines reply_deadlines;
+private BirdPayloadCodec payload_codec;
+private BirdSocketTransport socket_transport;
+private int log_size;
+private Map<String,BirdPipeline> pipeline_map;
+private int pipeline_window;
 private Map<BirdDebugSet,Boolean> debug_bubbles;
+private Executor swing_executor;
+private volatile boolean batch_supported;
+private BirdUpdateDispatcher update_dispatcher;
+private BirdResponseCache response_cache;
+private BirdPrefetcher response_prefetcher;
+private BirdSubscriptions update_subscriptions;
+private BirdHealth      server_health;
+private Set<CompletableFuture<Element>> active_futures;
+private Set<String>     limba_commands;
+private CompletableFuture<Boolean> diad_ready;
+private CompletableFuture<Boolean> limba_ready;
+private CompletableFuture<Boolean> assistant_ready;
+private long            start_time;
+private long            start_timeout;
+private Map<String,BirdServerStartup> server_startups;
+private int             keep_warm;
+private BirdLauncher    server_launcher;
 
 private static BirdFactory the_factory = new BirdFactory();
 
+private static final long ATTACH_WAIT = 5000;
+private static final long STOP_WAIT = 10000;
+
 
 
 /********************************************************************************/
@@ -169,14 +210,62 @@ private BirdFactory()
    diad_started = false;
    limba_running = false;
    limba_started = false;
-   hdlr_map = new HashMap<>();
+   start_time = 0;
+   server_startups = new ConcurrentHashMap<>();
+   server_launcher = null;
+   diad_ready = new CompletableFuture<>();
+   limba_ready = new CompletableFuture<>();
+   assistant_ready = diad_ready.thenCombine(limba_ready,new BothReady());
+   assistant_ready.thenAccept(new ReadyNotifier());
+   BoardProperties birdprops = BoardProperties.getProperties("Bird");
+   reply_deadlines = new BirdDeadlines(birdprops);
+   payload_codec = new BirdPayloadCodec(birdprops.getInt("Bird.compress.size",4096));
+   socket_transport = null;
+   log_size = birdprops.getInt("Bird.log.message.size",2048);
+   reply_registry = new BirdReplyRegistry(reply_deadlines);
+   pipeline_map = new HashMap<>();
+   pipeline_window = birdprops.getInt("Bird.pipeline.window",4);
+   update_dispatcher = new BirdUpdateDispatcher(this,birdprops.getInt("Bird.update.delay",20));
+   update_subscriptions = new BirdSubscriptions(this,
+         birdprops.getBoolean("Bird.subscribe",true));
+   server_health = new BirdHealth(this);
+   start_timeout = birdprops.getInt("Bird.start.timeout",600) * 1000L;
+   keep_warm = birdprops.getInt("Bird.keep.warm",0);
+   active_futures = ConcurrentHashMap.newKeySet();
+   limba_commands = new HashSet<>();
+   StringTokenizer ltok = new StringTokenizer(
+         birdprops.getProperty("Bird.limba.commands","ASKLIMBA"),", ");
+   while (ltok.hasMoreTokens()) {
+      limba_commands.add(ltok.nextToken());
+    }
+   response_cache = new BirdResponseCache(birdprops.getInt("Bird.cache.entries",64),
+         birdprops.getInt("Bird.cache.size",4096) * 1024L);
+   response_prefetcher = null;
+   if (birdprops.getBoolean("Bird.prefetch")) {
+      response_prefetcher = new BirdPrefetcher(this,birdprops.getInt("Bird.prefetch.max",1));
+    }
+   if (birdprops.getBoolean("Bird.store",true)) {
+      File wd = new File(BoardSetup.getSetup().getDefaultWorkspace());
+      try {
+         BirdResponseStore store = new BirdResponseStore(wd,
+               birdprops.getInt("Bird.store.slots",4096),
+               birdprops.getInt("Bird.store.size",16) * 1024L * 1024L);
+         response_cache.setStore(store);
+       }
+      catch (IOException e) {
+         BoardLog.logE("BIRD","Problem opening response store in " + wd,e);
+       }
+    }
    instance_map = new HashMap<>();
    debug_bubbles = new WeakHashMap<>();
+   swing_executor = new SwingExecutor();
+   batch_supported = true;
 
    BoardSetup bs = BoardSetup.getSetup();
    MintControl mc = bs.getMintControl();
    mc.register("<DIADREPLY RID='_VAR_0' />",new DiadReplyHandler());
    mc.register("<DIADREPLY DO='_VAR_0' />",new DiadMessageHandler());
+   mc.register("<BIRD TYPE='READY' SERVER='_VAR_0' />",new ReadyHandler());
 
    switch (BoardSetup.getSetup().getRunMode()) {
       case NORMAL :
@@ -197,43 +286,67 @@ private BirdFactory()
 /*                                                                              */
 /********************************************************************************/
 
-private void handleUpdate(Element xml)
+/**
+ *      Apply a parsed candidate update on the Swing thread.  The change set
+ *      has already been computed by the update dispatcher.
+ **/
+
+void handleUpdate(BirdCandidate cand,EnumSet<DiadCandidateChange> chng)
 {
-   if (IvyXml.isElement(xml,"DIADREPLY")) {
-      xml = IvyXml.getChild(xml,"CANDIDATE");
-    }
-   String id = IvyXml.getAttrString(xml,"ID");
+   String id = cand.getId();
    
-   BirdDebugSet bbl = findBubble(xml);
+   BirdDebugSet bbl = findBubble(cand);
+   BirdInstance binst = instance_map.get(id);
    if (bbl == null) {
       BoardLog.logD("BIRD","Can't find debug bubble for candidate " + id);
+      update_subscriptions.ignoreCandidate(id);
+      // nothing shows it and, once unsubscribed, DIAD won't say when it goes
+      if (binst != null) removeInstance(binst);
+      else update_dispatcher.forgetCandidate(id);
+      return;
     }
    
-   BirdInstance binst = instance_map.get(id);
    if (binst == null) {
       BoardLog.logD("BIRD","Need to create a new instance for " + id);
-      binst = new BirdInstance(xml);
+      binst = new BirdInstance(cand);
       if (binst.shouldRemove()) {
          BoardLog.logD("BIRD","Instance is not needed");
          return; 
        }
       instance_map.put(id,binst);
-      if (bbl != null) {
-         bbl.addDebugInstance(binst);
-       }
+      bbl.addDebugInstance(binst);
     }
    else {
-      binst.update(xml);
-      if (bbl != null) {
+      // NEW for a known instance means its old snapshot was forgotten
+      boolean fresh = chng.contains(DiadCandidateChange.NEW);
+      if (fresh || chng.contains(DiadCandidateChange.SYMPTOM) ||
+            chng.contains(DiadCandidateChange.START_FRAME)) {
+         response_cache.invalidate(id);
+       }
+      binst.update(cand,chng);
+      if (bbl.showsDebugInstance(binst)) {
          bbl.updateDebugInstance(binst); 
        }
+      else if (!binst.shouldRemove()) {
+         // a bubble opened after the instance was created
+         bbl.addDebugInstance(binst);
+       }
+      if (response_prefetcher != null &&
+            (fresh || chng.contains(DiadCandidateChange.STATE)) &&
+            binst.getState() == DiadCandidateState.READY) {
+         response_prefetcher.candidateReady(binst);
+       }
     } 
    
    BoardLog.logD("BIRD","Check remove " + binst.getId() + " " + 
-         binst.getState() + " " + binst.shouldRemove());
+         binst.getState() + " " + binst.shouldRemove() + " " + chng);
    if (binst.shouldRemove()) {  
       instance_map.remove(id);
-      if (bbl != null && !binst.isShouldSave()) {
+      update_subscriptions.candidateRemoved(id);
+      cancelPrefetch(id);
+      removePipeline(id);
+      response_cache.invalidate(id);
+      if (!binst.isShouldSave()) {
          bbl.removeDebugInstance(binst);
        }
     }
@@ -243,14 +356,74 @@ private void handleUpdate(Element xml)
 void removeInstance(BirdInstance binst)
 {
    instance_map.remove(binst.getId());
+   update_dispatcher.forgetCandidate(binst.getId());
+   cancelPrefetch(binst.getId());
+   removePipeline(binst.getId());
+   response_cache.invalidate(binst.getId());
+}
+
+
+/**
+ *      Stop any background queries for a candidate.
+ **/
+
+void cancelPrefetch(String id)
+{
+   if (response_prefetcher != null) response_prefetcher.cancel(id);
+}
+
+
+private void removePipeline(String id)
+{
+   synchronized (pipeline_map) {
+      pipeline_map.remove(id);
+    }
+}
+
+
+/**
+ *      Note a new debug set.  If threads is true it finds its candidates
+ *      by thread rather than by id.
+ **/
+
+void addDebugSet(BirdDebugSet dset,boolean threads)
+{
+   debug_bubbles.put(dset,Boolean.TRUE);
+   update_subscriptions.addDebugSet(dset,threads);
 }
 
 
-private BirdDebugSet findBubble(Element xml)
+void removeDebugSet(BirdDebugSet dset)
 {
-   String bid = IvyXml.getAttrString(xml,"ID");
-   Element thrd = IvyXml.getChild(xml,"THREAD");
-   String tid = IvyXml.getAttrString(thrd,"ID");
+   debug_bubbles.remove(dset);
+   update_subscriptions.removeDebugSet(dset);
+}
+
+
+/**
+ *      Called when updates stop for all but the given candidates.  The
+ *      snapshots of the others are dropped so the full update sent when
+ *      they are subscribed again is applied as new.
+ **/
+
+void forgetUnwatched(Set<String> keep)
+{
+   for (String id : instance_map.keySet()) {
+      if (!keep.contains(id)) update_dispatcher.forgetCandidate(id);
+    }
+}
+
+
+void watchCandidate(BirdDebugSet dset,String id)
+{
+   update_subscriptions.watchCandidate(dset,id);
+}
+
+
+private BirdDebugSet findBubble(BirdCandidate cand)
+{
+   String bid = cand.getId();
+   String tid = cand.getThreadId();
    
    for (BirdDebugSet dset : debug_bubbles.keySet()) {
       if (dset.isIdRelevant(bid)) { 
@@ -273,12 +446,175 @@ private BirdDebugSet findBubble(Element xml)
 /*                                                                              */
 /********************************************************************************/
 
+/**
+ *      Start DIAD and LIMBA at the same time.  Each is usable as soon as it
+ *      answers: DIAD commands go through once DIAD is up and commands that
+ *      need LIMBA wait for it.
+ **/
+
 private void start()
 {
+   start_time = System.currentTimeMillis();
+
+   LimbaStarter ls = new LimbaStarter();
+   ls.start();
+
    startDiad();
-   if (!diad_running) return;
-   startLimba();
-   if (!limba_running) return;
+   BoardLog.logD("BIRD","DIAD " + (diad_running ? "ready" : "failed") + " after " +
+         (System.currentTimeMillis() - start_time) + " ms");
+   diad_ready.complete(diad_running);
+}
+
+
+/**
+ *      Return a future that completes with true once both DIAD and LIMBA
+ *      have answered, or false if either could not be started.
+ **/
+
+CompletableFuture<Boolean> getAssistantReady()  { return assistant_ready; }
+
+CompletableFuture<Boolean> getDiadReady()       { return diad_ready; }
+
+CompletableFuture<Boolean> getLimbaReady()      { return limba_ready; }
+
+
+/**
+ *      For tests only: use DIAD and LIMBA servers that are already
+ *      answering on our Mint name rather than starting them.  The tests
+ *      in javatest use this to run against the stand-in server.  Nothing
+ *      in BIRD itself calls it.
+ **/
+
+void useRunningServers()
+{
+   diad_running = true;
+   diad_started = true;
+   limba_running = true;
+   limba_started = true;
+   server_health.serverStarted(true);
+   server_health.serverStarted(false);
+   diad_ready.complete(true);
+   limba_ready.complete(true);
+}
+
+
+
+private final class LimbaStarter extends Thread {
+
+   LimbaStarter() {
+      super("Limba Starter");
+      setDaemon(true);
+    }
+
+   @Override public void run() {
+      try {
+         startLimba();
+       }
+      catch (Throwable t) {
+         BoardLog.logE("BIRD","Problem starting LIMBA",t);
+       }
+      BoardLog.logD("BIRD","LIMBA " + (limba_running ? "ready" : "failed") + " after " +
+            (System.currentTimeMillis() - start_time) + " ms");
+      limba_ready.complete(limba_running);
+    }
+
+}       // end of inner class LimbaStarter
+
+
+
+private static final class BothReady implements BiFunction<Boolean,Boolean,Boolean> {
+
+   @Override public Boolean apply(Boolean diad,Boolean limba) {
+      return diad && limba;
+    }
+
+}       // end of inner class BothReady
+
+
+
+private final class ReadyNotifier implements Consumer<Boolean> {
+
+   @Override public void accept(Boolean fg) {
+      if (fg) {
+         BoardLog.logI("BIRD","Debugging assistant ready after " +
+               (System.currentTimeMillis() - start_time) + " ms");
+       }
+      else {
+         BoardLog.logE("BIRD","Debugging assistant could not be started");
+       }
+    }
+
+}       // end of inner class ReadyNotifier
+
+
+
+/**
+ *      Called once DIAD answers so that state DIAD keeps for us is set up
+ *      again after it is started or restarted.
+ **/
+
+private void diadConnected()
+{
+   update_subscriptions.restore();
+}
+
+
+/**
+ *      Called by the heartbeat when a server changes state.  While a server
+ *      is DOWN new requests that need it fail at once; requests it already
+ *      has are only failed if its process has exited, otherwise they wait
+ *      for their own deadlines.  When it answers again it is used again.
+ **/
+
+void serverStateChanged(boolean diad,BirdServerState prev,BirdServerState next,boolean exited)
+{
+   boolean up = (next == BirdServerState.UP);
+
+   if (diad) {
+      if (next == BirdServerState.DOWN) {
+         diad_running = false;
+         if (exited) failOutstanding(null);
+       }
+      else if (up && prev == BirdServerState.DOWN) {
+         diad_running = true;
+         diadConnected();
+       }
+    }
+   else {
+      if (next == BirdServerState.DOWN) {
+         limba_running = false;
+         if (exited) failOutstanding(limba_commands);
+       }
+      else if (up) {
+         limba_running = true;
+       }
+    }
+}
+
+
+BirdHealth getServerHealth()                    { return server_health; }
+
+/**
+ *      For tests only: lets the tests in javatest check which requests are
+ *      still registered.
+ **/
+
+BirdReplyRegistry getReplyRegistry()            { return reply_registry; }
+
+
+private void failOutstanding(Set<String> cmds)
+{
+   int ct = reply_registry.failPending(cmds);
+   if (cmds == null) {
+      List<CompletableFuture<Element>> futs = new ArrayList<>(active_futures);
+      active_futures.clear();
+      for (CompletableFuture<Element> fut : futs) {
+         fut.complete(null);
+         ++ct;
+       }
+    }
+
+   BoardLog.logD("BIRD","Failed " + ct + " outstanding requests");
 }
 
 
@@ -298,6 +634,8 @@ private boolean startDiad()
       if (rslt != null) {
          diad_running = true;
          diad_started = true;
+         server_health.serverStarted(true);
+         diadConnected();
          return true;
        }
     }
@@ -306,66 +644,16 @@ private boolean startDiad()
 
    BoardLog.logD("BIRD","Starting diad server");
 
-   IvyExec exec = null;
    File wd =  new File(bs.getDefaultWorkspace());
    File logf = new File(wd,"diad.log");
 
-   List<String> args = new ArrayList<>();
-
-   args.add(IvyExecQuery.getJavaPath());
-
    File jarfile = IvyFile.getJarFile(BirdFactory.class);
-   String xcp = birdprops.getProperty("Bird.diad.class.path");
-   if (xcp == null) {
-      xcp = System.getProperty("java.class.path");
-      String ycp = birdprops.getProperty("Bird.diad.add.path");
-      if (ycp != null) xcp = ycp + File.pathSeparator + xcp;
-    }
-   else {
-      BoardSetup setup = BoardSetup.getSetup();
-      StringBuffer buf = new StringBuffer();
-      StringTokenizer tok = new StringTokenizer(xcp,":;");
-      while (tok.hasMoreTokens()) {
-         String elt = tok.nextToken();
-         if (!elt.startsWith("/") &&  !elt.startsWith("\\")) {
-            if (elt.equals("eclipsejar")) {
-               elt = setup.getEclipsePath();
-             }
-            else if (elt.equals("diad.jar") && jarfile != null) {
-               elt = jarfile.getPath();
-             }
-            else {
-               String oelt = elt;
-               elt = setup.getLibraryPath(elt);
-               File f1 = new File(elt);
-               if (!f1.exists()) {
-                  File f0 = setup.getLibraryDirectory().getParentFile();
-                  File f2 = new File(f0,"dropins");
-                  File f3 = new File(f2,oelt);
-                  if (f3.exists()) {
-                     f1 = f3;
-                     elt = f3.getPath();
-                   }
-                }
-               if (!f1.exists()) {
-                  File f4 = new File("/pro/diad/diad.jar");
-                  if (f4.exists()) {
-                     f1 = f4;
-                     elt = f4.getPath();
-                   }
-                }
-               BoardLog.logD("BIRD","Use class path diad element " + elt);
-             }
-          }
-         if (buf.length() > 0) buf.append(File.pathSeparator);
-         buf.append(elt);
-       }
-      xcp = buf.toString();
-    }
-   args.add("-cp");
-   args.add(xcp);
+   BirdLauncher bl = getLauncher(wd);
+   String xcp = bl.getClassPath("DIAD",birdprops.getProperty("Bird.diad.class.path"),
+         birdprops.getProperty("Bird.diad.add.path"),"diad.jar",jarfile,
+         new File("/pro/diad/diad.jar"));
 
-   args.add("edu.brown.cs.diad.dicontrol.DicontrolMain");
+   List<String> args = bl.getCommand("DIAD",xcp,"edu.brown.cs.diad.dicontrol.DicontrolMain");
    args.add("-m");
    args.add(bs.getMintName());
    args.add("-L");
@@ -379,40 +667,39 @@ private boolean startDiad()
       diad_started = true;
     }
 
-   for (int i = 0; i < 500; ++i) {
-      MintDefaultReply rply = new MintDefaultReply();
-      mc.send("<DIAD DO='PING' />",rply,MINT_MSG_FIRST_NON_NULL);
-      String rslt = rply.waitForString(1000);
-      BoardLog.logD("BIRD","Diad ping response " + rslt);
-      if (rslt != null) {
-         diad_running = true;
-         break;
-       }
-      if (i == 0) {
-         try {
-            // make IGNORE_OUTPUT to clean up otutput
-            exec = new IvyExec(args,null,IvyExec.ERROR_OUTPUT);
-            BoardLog.logD("BIRD","Run " + exec.getCommand());
-          }
-         catch (IOException e) {
-            break;
-          }
-       }
-      else {
-         try {
-            if (exec != null) {
-               int sts = exec.exitValue();
-               BoardLog.logD("BIRD","Diad server disappeared with status " + sts);
-               break;
-             }
-          }
-         catch (IllegalThreadStateException e) { }
-       }
-
-      try {
-         Thread.sleep(2000);
+   // advertise what we understand; DIAD answers with what it will use
+   IvyXmlWriter pxw = new IvyXmlWriter();
+   pxw.begin("DIAD");
+   pxw.field("DO","PING");
+   if (birdprops.getBoolean("Bird.compress",true)) {
+      pxw.field("ACCEPT",BirdPayloadCodec.ENCODING);
+    }
+   if (birdprops.getBoolean("Bird.socket")) {
+      pxw.field("TRANSPORT","socket");
+    }
+   if (birdprops.getBoolean("Bird.update.delta",true)) {
+      pxw.field("UPDATES","delta");
+    }
+   if (keep_warm > 0) {
+      pxw.field("IDLE",keep_warm);
+    }
+   pxw.end("DIAD");
+   String ping = pxw.toString();
+   pxw.close();
+
+   String rslt = attachOrLaunch("DIAD",ping,args,wd);
+
+   if (rslt != null) {
+      diad_running = true;
+      Element pong = IvyXml.convertStringToXml(rslt);
+      String enc = IvyXml.getAttrString(pong,"COMPRESS");
+      payload_codec.setEnabled(BirdPayloadCodec.ENCODING.equals(enc));
+      String sock = IvyXml.getAttrString(pong,"SOCKET");
+      if (sock != null) {
+         socket_transport = BirdSocketTransport.connect(this,payload_codec,sock);
        }
-      catch (InterruptedException e) { }
+      server_health.serverStarted(true);
+      diadConnected();
     }
    if (!diad_running) {
       BoardLog.logE("BIRD","Unable to start diad server: " + args);
@@ -439,6 +726,7 @@ private boolean startLimba()
       if (rslt != null) {
          limba_running = true;
          limba_started = true;
+         server_health.serverStarted(false);
          return true;
        }
     }
@@ -447,15 +735,10 @@ private boolean startLimba()
    
    BoardLog.logD("BAIT","Starting limba server");
    
-   IvyExec exec = null;
    File wd =  new File(bs.getDefaultWorkspace());
    File logf = new File(wd,"limba.log");
    File transf = new File(wd,"limbatrans.html");
    
-   List<String> args = new ArrayList<>();
-   
-   args.add(IvyExecQuery.getJavaPath());
-   
    File jarfile = null;
    try {
       Class<?> clz = Class.forName("edu.brown.cs.limbabb.bait.BaitFactory");
@@ -465,47 +748,11 @@ private boolean startLimba()
       return false;
     }
    
-   String xcp = baitprops.getProperty("Bait.limba.class.path");
-   if (xcp == null) {
-      xcp = System.getProperty("java.class.path");
-      String ycp = baitprops.getProperty("Bait.limba.add.path");
-      if (ycp != null) xcp = ycp + File.pathSeparator + xcp;
-    }
-   else {
-      BoardSetup setup = BoardSetup.getSetup();
-      StringBuffer buf = new StringBuffer();
-      StringTokenizer tok = new StringTokenizer(xcp,":;");
-      while (tok.hasMoreTokens()) {
-         String elt = tok.nextToken();
-         if (!elt.startsWith("/") &&  !elt.startsWith("\\")) {
-            if (elt.equals("eclipsejar")) {
-               elt = setup.getEclipsePath();
-             }
-            else if (elt.equals("limba.jar") && jarfile != null) {
-               elt = jarfile.getPath();
-             }
-            else {
-               String oelt = elt;
-               elt = setup.getLibraryPath(elt);
-               File f1 = new File(elt);
-               if (!f1.exists()) {
-                  f1 = setup.getLibraryDirectory().getParentFile();
-                  File f2 = new File(f1,"dropins");
-                  File f3 = new File(f2,oelt);
-                  if (f3.exists()) elt = f3.getPath();
-                }
-               BoardLog.logD("BAIT","Use class path limba element " + elt);
-             }
-          }
-         if (buf.length() > 0) buf.append(File.pathSeparator);
-         buf.append(elt);
-       }
-      xcp = buf.toString();
-    }
-   args.add("-cp");
-   args.add(xcp);
-   
-   args.add("edu.brown.cs.limba.limba.LimbaMain");
+   BirdLauncher bl = getLauncher(wd);
+   String xcp = bl.getClassPath("LIMBA",baitprops.getProperty("Bait.limba.class.path"),
+         baitprops.getProperty("Bait.limba.add.path"),"limba.jar",jarfile,null);
+
+   List<String> args = bl.getCommand("LIMBA",xcp,"edu.brown.cs.limba.limba.LimbaMain");
    args.add("-m");
    args.add(bs.getMintName());
    args.add("-L");
@@ -556,50 +803,159 @@ private boolean startLimba()
       limba_started = true;
     }
    
-   for (int i = 0; i < 500; ++i) {
-      MintDefaultReply rply = new MintDefaultReply();
-      mc.send("<LIMBA DO='PING' />",rply,MINT_MSG_FIRST_NON_NULL);
-      String rslt = rply.waitForString(1000);
-      BoardLog.logD("BAIT","Limba ping response " + rslt);
-      if (rslt != null) {
-         limba_running = true;
-         break;
+   String ping = "<LIMBA DO='PING' />";
+   if (keep_warm > 0) ping = "<LIMBA DO='PING' IDLE='" + keep_warm + "' />";
+   String rslt = attachOrLaunch("LIMBA",ping,args,wd);
+
+   if (rslt != null) {
+      limba_running = true;
+      server_health.serverStarted(false);
+    }
+   if (!limba_running) {
+      BoardLog.logE("BAIT","Unable to start limba server: " + args);
+      return false;
+    }
+   
+   return true;
+}
+
+
+/**
+ *      Find or start a server.  A server already running for this workspace
+ *      with the same Mint name and version is used if it answers; one that
+ *      does not answer within the startup time is stopped.  Otherwise a
+ *      new one is launched and recorded for later sessions.  Returns the
+ *      server's answer to the PING or null.
+ **/
+
+private String attachOrLaunch(String server,String ping,List<String> args,File wd)
+{
+   String mint = BoardSetup.getSetup().getMintName();
+   String version = getServerVersion(args);
+   BirdServerDescriptor desc = new BirdServerDescriptor(wd,server);
+   BirdServerStartup su = new BirdServerStartup(server,ping);
+   server_startups.put(server,su);
+
+   desc.lock();
+   try {
+      long pid = desc.getLivePid();
+      // a server on another Mint name can't answer us, so it doesn't matter here
+      if (pid > 0 && !desc.usesMint(mint)) pid = -1;
+      if (pid > 0 && !desc.isCompatible(version)) {
+         BoardLog.logI("BIRD","Stopping " + server + " " + pid + " of a different version");
+         if (!BirdServerDescriptor.stopProcess(pid,STOP_WAIT)) {
+            BoardLog.logE("BIRD","Can't stop old " + server + " server " + pid);
+            return null;
+          }
+         desc.remove();
+         pid = -1;
        }
-      if (i == 0) {
-         try {
-            // make IGNORE_OUTPUT to clean up otutput
-            exec = new IvyExec(args,null,IvyExec.ERROR_OUTPUT);    
-            BoardLog.logD("BAIT","Run " + exec.getCommand());
+
+      String rslt = null;
+      if (pid > 0) {
+         // a compatible server is running; it may just be busy, so don't start another
+         su.watch(pid);
+         rslt = su.ping(ATTACH_WAIT);
+         if (rslt == null) rslt = su.waitForPong(start_timeout);
+         if (rslt != null) {
+            BoardLog.logD("BIRD","Attached to running " + server + " " + pid);
+            return rslt;
           }
-         catch (IOException e) {
-            break;
+         long live = desc.getLivePid();
+         if (live > 0) {
+            // it had its chance; a wedged server would otherwise block us for good
+            BoardLog.logE("BIRD","Running " + server + " " + live +
+                  " does not answer; stopping it");
+            if (!BirdServerDescriptor.stopProcess(live,STOP_WAIT)) {
+               BoardLog.logE("BIRD","Can't stop unresponsive " + server + " server " + live);
+               return null;
+             }
           }
+         // the old server's exit is still reported to su, so don't reuse it
+         su = new BirdServerStartup(server,ping);
+         server_startups.put(server,su);
        }
       else {
-         try {
-            if (exec != null) {
-               int sts = exec.exitValue();
-               BoardLog.logD("BAIT","Limba server disappeared with status " + sts);
-               break;
-             }
+         rslt = su.ping(1000);
+         if (rslt != null) {
+            BoardLog.logD("BIRD","Found running " + server + " with no descriptor");
+            return rslt;
           }
-         catch (IllegalThreadStateException e) { }
        }
-      
-      try {
-         Thread.sleep(2000);
+      desc.remove();
+
+      BoardLog.logD("BIRD","Run " + server + " server");
+      IvyExec exec = su.launch(args);
+      if (exec == null) return null;
+      rslt = su.waitForPong(start_timeout);
+      if (rslt != null) {
+         BoardLog.logI("BIRD",server + " first PONG after " + su.getElapsedTime() +
+               " ms with " + BirdLauncher.getArchiveMode(args));
+         desc.write(mint,version,getServerPid(rslt));
        }
-      catch (InterruptedException e) { }
+      return rslt;
     }
-   if (!limba_running) {
-      BoardLog.logE("BAIT","Unable to start limba server: " + args);
-      return false;
+   finally {
+      desc.unlock();
+      server_startups.remove(server);
     }
-   
-   return true;
 }
 
 
+private synchronized BirdLauncher getLauncher(File wd)
+{
+   if (server_launcher == null) server_launcher = new BirdLauncher(wd);
+
+   return server_launcher;
+}
+
+
+/**
+ *      A server is compatible if it was started with the same command and
+ *      none of the files on its class path have changed since.  Whether it
+ *      made or used a class archive doesn't matter.
+ **/
+
+private static String getServerVersion(List<String> args)
+{
+   CRC32 crc = new CRC32();
+   boolean cp = false;
+   for (String arg : args) {
+      if (BirdLauncher.isArchiveArg(arg)) continue;
+      crc.update(arg.getBytes(StandardCharsets.UTF_8));
+      if (cp) {
+         StringTokenizer tok = new StringTokenizer(arg,File.pathSeparator);
+         while (tok.hasMoreTokens()) {
+            File f = new File(tok.nextToken());
+            long dlm = f.lastModified();
+            for (int i = 0; i < 8; ++i) {
+               crc.update((int) (dlm >> (8*i)));
+             }
+          }
+       }
+      cp = arg.equals("-cp");
+    }
+
+   return Long.toHexString(crc.getValue());
+}
+
+
+private static long getServerPid(String pong)
+{
+   Element xml = IvyXml.convertStringToXml(pong);
+   String pid = IvyXml.getAttrString(xml,"PID");
+   if (pid == null) return -1;
+
+   try {
+      return Long.parseLong(pid);
+    }
+   catch (NumberFormatException e) {
+      return -1;
+    }
+}
+
+
+
 /********************************************************************************/
 /*                                                                              */
 /*      Setup BIRD                                                              */
@@ -619,6 +975,29 @@ private static class BirdStarter extends Thread {
 }       // end of inner class BirdStarter
 
 
+/**
+ *      Note that a server that is starting has said it is ready.
+ **/
+
+private void serverReady(String server,String how)
+{
+   BirdServerStartup su = server_startups.get(server);
+   if (su != null) su.signalReady(how);
+}
+
+
+
+private final class ReadyHandler implements MintHandler {
+
+   @Override public void receive(MintMessage msg,MintArguments args) {
+      serverReady(args.getArgument(0),"mint");
+      msg.replyTo();
+    }
+
+}       // end of inner class ReadyHandler
+
+
+
 private final class StartHandler implements MintHandler {
 
    @Override public void receive(MintMessage msg,MintArguments args) {
@@ -638,36 +1017,125 @@ private final class StartHandler implements MintHandler {
 /*                                                                              */
 /********************************************************************************/
 
-void issueCommand(String cmd,CommandArgs args,String elt,String body,ResponseHandler hdlr)
+/**
+ *      Issue a deferred command.  The body, if any, is either XML text or,
+ *      if elt is given, text to be wrapped as CDATA in an element of that
+ *      name.  It is written straight into the outgoing message when the
+ *      command is actually sent.
+ **/
+
+String issueCommand(String cmd,CommandArgs args,String elt,String body,ResponseHandler hdlr)
 {
-   String cnts = body;
-   if (elt != null) {
-      IvyXmlWriter xw = new IvyXmlWriter();
-      xw.cdataElement(elt,body);
-      cnts = xw.toString();
-      xw.close();
+   if (hdlr == null) hdlr = new DummyResponder();
+
+   BirdPipeline pipe = null;
+   if (args != null && args.get("DEBUGID") != null) {
+      pipe = getPipeline(args.get("DEBUGID").toString());
+    }
+   if (pipe != null) {
+      return pipe.submit(cmd,args,elt,body,hdlr);
     }
 
-   issueXmlCommand(cmd,args,cnts,hdlr);
+   String rid = registerReply(cmd,hdlr);
+   sendDeferredCommand(cmd,args,elt,body,rid);
+
+   return rid;
 }
 
 
-void issueXmlCommand(String cmd,CommandArgs args,String body,ResponseHandler hdlr)
+String issueXmlCommand(String cmd,CommandArgs args,String body,ResponseHandler hdlr)
 {
-   if (hdlr == null) hdlr = new DummyResponder();
+   return issueCommand(cmd,args,null,body,hdlr);
+}
+
+
+String registerReply(String cmd,ResponseHandler hdlr)
+{
+   return reply_registry.register(cmd,hdlr);
+}
+
+
+/**
+ *      Register a reply for a command that will be sent later.  Its
+ *      deadline starts with startReplyTimer().
+ **/
+
+String registerQueuedReply(String cmd,ResponseHandler hdlr)
+{
+   return reply_registry.registerQueued(cmd,hdlr);
+}
+
+
+void startReplyTimer(String rid)
+{
+   reply_registry.startTimer(rid);
+}
+
+
+void sendDeferredCommand(String cmd,CommandArgs args,String elt,String body,String rid)
+{
+   if (limba_commands.contains(cmd) && !limba_ready.isDone()) {
+      // LIMBA is still starting; send once it answers
+      BoardLog.logD("BIRD","Hold " + cmd + " " + rid + " until LIMBA is ready");
+      limba_ready.thenAccept(new HeldCommand(cmd,args,elt,body,rid));
+      return;
+    }
 
-   String rid = "DIAD_" + (int) (Math.random()*1000000);
-   hdlr_map.put(rid,hdlr);
    if (args == null) args = new CommandArgs("RID",rid);
    else args.put("RID",rid);
 
-   Element xml = sendDiadMessage(cmd,args,body);
-   if (xml == null) {
-      hdlr.handleResponse(null);
+   BirdMessage msg = new BirdMessage(cmd,args);
+   msg.addCdata(elt,body);
+   CompletableFuture<Element> fut = sendMessageAsync(msg);
+   fut.thenAccept(new CommandAcknowledger(rid));
+}
+
+
+/**
+ *      Cancel a deferred command.  The handler is dropped without being
+ *      called and, if the command was already sent, DIAD is told to stop
+ *      working on it.  A reply that arrives later is ignored.
+ **/
+
+void cancelCommand(String rid)
+{
+   ResponseHandler hdlr = reply_registry.remove(rid);
+   if (hdlr == null) return;
+
+   boolean sent = true;
+   if (hdlr instanceof CancelHandler) {
+      CancelHandler chdlr = (CancelHandler) hdlr;
+      sent = chdlr.handleCancel();
     }
-   String nrid = IvyXml.getAttrString(xml,"RID");
-   if (!rid.equals(nrid)) {
-      BoardLog.logE("BIRD","Reply ids don't match " + rid + " " + nrid);
+   if (!sent) return;
+
+   BoardLog.logD("BIRD","Cancel request " + rid);
+   sendDiadMessageAsync("CANCEL",new CommandArgs("RID",rid),null);
+}
+
+
+/**
+ *      Ask DIAD for a full update of a candidate after a gap in its delta
+ *      updates.  DIAD either includes the CANDIDATE in its reply or sends
+ *      a normal full UPDATE.
+ **/
+
+void requestResync(String id,long seq)
+{
+   CommandArgs args = new CommandArgs("DEBUGID",id,"SEQ",seq);
+   sendDiadMessageAsync("RESYNC",args,null).thenAccept(new ResyncReply(id));
+}
+
+
+private BirdPipeline getPipeline(String id)
+{
+   synchronized (pipeline_map) {
+      BirdPipeline pipe = pipeline_map.get(id);
+      if (pipe == null) {
+         pipe = new BirdPipeline(this,id,pipeline_window);
+         pipeline_map.put(id,pipe);
+       }
+      return pipe;
     }
 }
 
@@ -678,6 +1146,77 @@ private static final class DummyResponder implements ResponseHandler {
 
 
 
+private final class HeldCommand implements Consumer<Boolean> {
+
+   private String command_name;
+   private CommandArgs command_args;
+   private String body_element;
+   private String command_body;
+   private String request_id;
+
+   HeldCommand(String cmd,CommandArgs args,String elt,String body,String rid) {
+      command_name = cmd;
+      command_args = args;
+      body_element = elt;
+      command_body = body;
+      request_id = rid;
+    }
+
+   @Override public void accept(Boolean fg) {
+      // skip commands cancelled while waiting
+      if (reply_registry.get(request_id) == null) return;
+      sendDeferredCommand(command_name,command_args,body_element,command_body,request_id);
+    }
+
+}       // end of inner class HeldCommand
+
+
+
+private final class ResyncReply implements Consumer<Element> {
+
+   private String candidate_id;
+
+   ResyncReply(String id) {
+      candidate_id = id;
+    }
+
+   @Override public void accept(Element xml) {
+      if (xml == null) {
+         update_dispatcher.resyncFailed(candidate_id);
+         return;
+       }
+      Element cand = IvyXml.getChild(xml,"CANDIDATE");
+      if (cand != null) update_dispatcher.postUpdate(cand);
+    }
+
+}       // end of inner class ResyncReply
+
+
+
+private final class CommandAcknowledger implements Consumer<Element> {
+
+   private String request_id;
+
+   CommandAcknowledger(String rid) {
+      request_id = rid;
+    }
+
+   @Override public void accept(Element xml) {
+      if (xml == null) {
+         ResponseHandler hdlr = reply_registry.remove(request_id);
+         if (hdlr != null) hdlr.handleResponse(null);
+         return;
+       }
+      String nrid = IvyXml.getAttrString(xml,"RID");
+      if (!request_id.equals(nrid)) {
+         BoardLog.logE("BIRD","Reply ids don't match " + request_id + " " + nrid);
+       }
+    }
+
+}       // end of inner class CommandAcknowledger
+
+
+
 /********************************************************************************/
 /*                                                                              */
 /*      Diad Server communication                                               */
@@ -686,114 +1225,396 @@ private static final class DummyResponder implements ResponseHandler {
 
 Element sendDiadMessage(String cmd,CommandArgs args,String cnts)
 {
-   if (!diad_running) return null;
+   try {
+      return sendDiadMessageAsync(cmd,args,cnts).get();
+    }
+   catch (InterruptedException e) { }
+   catch (ExecutionException e) {
+      BoardLog.logE("BIRD","Problem sending to DIAD",e);
+    }
+
+   return null;
+}
+
+
+/**
+ *      Send a message to DIAD without waiting for the reply.  The returned
+ *      future is completed with the reply (or null on failure or timeout)
+ *      on the Mint thread; use getSwingExecutor() for continuations that
+ *      touch the user interface.
+ **/
+
+CompletableFuture<Element> sendDiadMessageAsync(String cmd,CommandArgs args,String cnts)
+{
+   BirdMessage msg = new BirdMessage(cmd,args);
+   msg.addXml(cnts);
+
+   return sendMessageAsync(msg);
+}
+
+
+CompletableFuture<Element> sendMessageAsync(BirdMessage bmsg)
+{
+   CompletableFuture<Element> fut = new CompletableFuture<>();
+   String cmd = bmsg.getCommand();
+   if (!diad_running || (!limba_running && limba_commands.contains(cmd))) {
+      // circuit breaker: the server is down so don't wait for a timeout
+      BoardLog.logD("BIRD","Server not available for " + cmd);
+      fut.complete(null);
+      return fut;
+    }
 
    BoardSetup bs = BoardSetup.getSetup();
    MintControl mc = bs.getMintControl();
 
-   MintDefaultReply rply = new MintDefaultReply();
-   IvyXmlWriter xw = new IvyXmlWriter();
-   xw.begin("DIAD");
-   xw.field("DO",cmd);
-   if (args != null) {
-      for (Map.Entry<String,Object> ent : args.entrySet()) {
-         xw.field(ent.getKey(),ent.getValue());
+   String msg = bmsg.getText(payload_codec);
+
+   BoardLog.logD("BIRD","Send to DIAD: " + BirdMessage.getLogText(msg,log_size));
+
+   BirdSocketTransport sock = socket_transport;
+   if (sock == null || !sock.send(msg,fut)) {
+      mc.send(msg,new AsyncReply(fut),MINT_MSG_FIRST_NON_NULL);
+    }
+
+   long timeout = bmsg.getTimeout();
+   if (timeout <= 0) timeout = reply_deadlines.getTimeout(cmd);
+   active_futures.add(fut);
+   fut.whenComplete(new LatencyRecorder(fut,cmd,timeout));
+
+   return fut.completeOnTimeout(null,timeout,TimeUnit.MILLISECONDS);
+}
+
+
+/**
+ *      Send several commands to DIAD in a single BATCH message.  The result
+ *      is the list of individual replies in command order.  If DIAD does not
+ *      understand BATCH the commands are sent individually instead.  If
+ *      there is no reply at all every entry is null.
+ **/
+
+CompletableFuture<List<Element>> sendBatch(List<BirdCommand> cmds)
+{
+   if (cmds.size() == 1 || !batch_supported) {
+      return sendSeparately(cmds);
+    }
+
+   CommandArgs args = new CommandArgs("COUNT",cmds.size());
+   BirdMessage msg = new BirdMessage("BATCH",args);
+   IvyXmlWriter xw = msg.getWriter();
+   xw.begin("BATCH");
+   long timeout = 0;
+   for (int i = 0; i < cmds.size(); ++i) {
+      BirdCommand bc = cmds.get(i);
+      bc.outputXml(xw,i);
+      // the batch can take as long as its slowest command
+      timeout = Math.max(timeout,reply_deadlines.getTimeout(bc.getCommand()));
+    }
+   xw.end("BATCH");
+   msg.setTimeout(timeout);
+
+   return sendMessageAsync(msg).thenCompose(new BatchDecoder(cmds));
+}
+
+
+private CompletableFuture<List<Element>> sendSeparately(List<BirdCommand> cmds)
+{
+   List<CompletableFuture<Element>> futs = new ArrayList<>();
+   for (BirdCommand bc : cmds) {
+      futs.add(sendDiadMessageAsync(bc.getCommand(),bc.getArgs(),bc.getBody()));
+    }
+   CompletableFuture<?> [] all = futs.toArray(new CompletableFuture<?>[futs.size()]);
+
+   return CompletableFuture.allOf(all).thenApply(new BatchCollector(futs));
+}
+
+
+
+private final class BatchDecoder implements Function<Element,CompletionStage<List<Element>>> {
+
+   private List<BirdCommand> batch_commands;
+
+   BatchDecoder(List<BirdCommand> cmds) {
+      batch_commands = cmds;
+    }
+
+   @Override public CompletionStage<List<Element>> apply(Element xml) {
+      List<Element> rslt = new ArrayList<>();
+      for (int i = 0; i < batch_commands.size(); ++i) rslt.add(null);
+
+      // no reply (timeout or server down): resending would only wait again
+      if (xml == null) return CompletableFuture.completedFuture(rslt);
+
+      Element bxml = xml;
+      if (!IvyXml.isElement(bxml,"BATCH")) bxml = IvyXml.getChild(xml,"BATCH");
+      if (bxml == null) {
+         BoardLog.logD("BIRD","DIAD does not support BATCH; sending separately");
+         batch_supported = false;
+         return sendSeparately(batch_commands);
+       }
+
+      for (Element rxml : IvyXml.children(bxml,"REPLY")) {
+         int idx = IvyXml.getAttrInt(rxml,"INDEX",-1);
+         if (idx < 0 || idx >= rslt.size()) continue;
+         Element val = null;
+         for (Element cxml : IvyXml.children(rxml)) {
+            val = cxml;
+            break;
+          }
+         rslt.set(idx,val);
        }
+      return CompletableFuture.completedFuture(rslt);
     }
-   if (cnts != null) {
-      xw.xmlText(cnts);
+
+}       // end of inner class BatchDecoder
+
+
+
+private static final class BatchCollector implements Function<Void,List<Element>> {
+
+   private List<CompletableFuture<Element>> reply_futures;
+
+   BatchCollector(List<CompletableFuture<Element>> futs) {
+      reply_futures = futs;
     }
-   xw.end("DIAD");
-   String msg = xw.toString();
-   xw.close();
 
-   BoardLog.logD("BIRD","Send to DIAD: " + msg);
+   @Override public List<Element> apply(Void v) {
+      List<Element> rslt = new ArrayList<>();
+      for (CompletableFuture<Element> fut : reply_futures) {
+         rslt.add(fut.getNow(null));
+       }
+      return rslt;
+    }
 
-   mc.send(msg,rply,MINT_MSG_FIRST_NON_NULL);
+}       // end of inner class BatchCollector
 
-   Element rslt = rply.waitForXml(60000);
 
-   BoardLog.logD("BSEAN","Reply from DIAD: " + IvyXml.convertXmlToString(rslt));
 
-   return rslt;
+Executor getSwingExecutor()
+{
+   return swing_executor;
 }
 
 
+BirdResponseCache getResponseCache()
+{
+   return response_cache;
+}
+
+
+
+private final class AsyncReply implements MintReply {
+
+   private CompletableFuture<Element> reply_future;
+
+   AsyncReply(CompletableFuture<Element> fut) {
+      reply_future = fut;
+    }
+
+   @Override public void handleReply(MintMessage msg,MintMessage rply) {
+      Element rslt = (rply == null ? null : payload_codec.decode(rply.getXml()));
+      BoardLog.logD("BIRD","Reply from DIAD: " + IvyXml.convertXmlToString(rslt));
+      reply_future.complete(rslt);
+    }
+
+   @Override public void handleReplyDone(MintMessage msg) {
+      reply_future.complete(null);
+    }
+
+}       // end of inner class AsyncReply
+
+
+
+private final class LatencyRecorder implements BiConsumer<Element,Throwable> {
+
+   private CompletableFuture<Element> for_future;
+   private String command_name;
+   private long start_time;
+   private long command_timeout;
+
+   LatencyRecorder(CompletableFuture<Element> fut,String cmd,long timeout) {
+      for_future = fut;
+      command_name = cmd;
+      start_time = System.currentTimeMillis();
+      command_timeout = timeout;
+    }
+
+   @Override public void accept(Element rslt,Throwable t) {
+      active_futures.remove(for_future);
+      long delta = System.currentTimeMillis() - start_time;
+      if (rslt != null) {
+         reply_deadlines.noteLatency(command_name,delta);
+       }
+      else if (delta >= command_timeout) {
+         BoardLog.logD("BIRD","DIAD command " + command_name + " timed out after " +
+               command_timeout);
+         // the real latency is at least the deadline; leaving it out would
+         // keep the estimate low after a slow period
+         reply_deadlines.noteLatency(command_name,command_timeout);
+       }
+    }
+
+}       // end of inner class LatencyRecorder
+
+
+
+private static final class SwingExecutor implements Executor {
+
+   @Override public void execute(Runnable r) {
+      SwingUtilities.invokeLater(r);
+    }
+
+}       // end of inner class SwingExecutor
+
+
 /********************************************************************************/
 /*                                                                              */
 /*      Message handling                                                        */
 /*                                                                              */
 /********************************************************************************/
 
-private final class DiadReplyHandler implements MintHandler {
+/**
+ *      Handle a deferred reply, from either Mint or the DIAD socket.
+ **/
 
-   @Override public void receive(MintMessage msg,MintArguments args) {
-      Element xml = msg.getXml();
-      String rid = args.getArgument(0);
-      String rslt = null;
-      try {
+void handleDeferredReply(String rid,Element xml)
+{
+   try {
+      if (IvyXml.getAttrBool(xml,"PARTIAL")) {
+         handlePartialReply(rid,IvyXml.getTextElement(xml,"CHUNK"));
+       }
+      else {
          BoardLog.logD("BIRD","Handle deferred reply " + rid + " " +
                IvyXml.convertXmlToString(xml));
-         ResponseHandler hdlr = hdlr_map.remove(rid);
+         ResponseHandler hdlr = reply_registry.complete(rid);
          if (hdlr != null) {
             Element xmlrslt = IvyXml.getChild(xml,"RESULT");
             hdlr.handleResponse(xmlrslt);
           }
        }
-      catch (Throwable e) {
-         BoardLog.logE("BIRD","Error processing command",e);
-       }
-      msg.replyTo(rslt);
-   }
-
-}       // end of inner class UpdateHandler
+    }
+   catch (Throwable e) {
+      BoardLog.logE("BIRD","Error processing command",e);
+    }
+}
 
 
+/**
+ *      Handle the text of a deferred reply.  Streamed chunks are taken
+ *      straight from the text; only final replies are converted to XML
+ *      since that is what the response handlers use.
+ **/
 
-private final class DiadMessageHandler implements MintHandler {
+void handleDeferredReply(String rid,String text,Map<String,String> attrs)
+{
+   if (attrs == null) attrs = BirdXmlReader.getRootAttributes(text);
 
-   @Override public void receive(MintMessage msg,MintArguments args) {
-      Element xml = msg.getXml();
-      String cmd = args.getArgument(0);
+   if (attrs != null && !BirdPayloadCodec.isCompressed(attrs) &&
+         BirdXmlReader.getBoolean(attrs.get("PARTIAL"))) {
       try {
-         BoardLog.logD("BIRD","Handle DIAD message " + cmd + " " +
-               IvyXml.convertXmlToString(xml));
-         switch (cmd) {
-            case "PING" :
-               msg.replyTo("<PONG/>");
-               break;    
-            case "UPDATE" :
-               SwingUtilities.invokeLater(new UpdateHandler(xml));
-               msg.replyTo();
-               break;
-            default :
-               BoardLog.logE("BRID","Unknown DIAD message " + cmd);
-               msg.replyTo();
-               break;
-          }
+         handlePartialReply(rid,BirdXmlReader.getChildText(text,"CHUNK"));
        }
       catch (Throwable e) {
-         BoardLog.logE("BIRD","Error processing diad message",e);
-         msg.replyTo();
+         BoardLog.logE("BIRD","Error processing partial reply",e);
        }
+      return;
     }
 
-}       // end of inner class UpdateHandler
+   Element xml = payload_codec.decode(IvyXml.convertStringToXml(text));
+   handleDeferredReply(rid,xml);
+}
 
 
-private class UpdateHandler implements Runnable {
+private void handlePartialReply(String rid,String chunk)
+{
+   // streamed chunk: the request stays registered for the final reply
+   ResponseHandler hdlr = reply_registry.get(rid);
+   if (hdlr instanceof StreamHandler) {
+      StreamHandler shdlr = (StreamHandler) hdlr;
+      shdlr.handlePartial(chunk);
+    }
+}
 
-   private Element update_xml;
-   
-   UpdateHandler(Element xml) {
-      update_xml = xml;
+
+/**
+ *      Handle a message from DIAD, from either Mint or the DIAD socket.
+ *      Returns the text of the reply, if any.
+ **/
+
+String handleDiadMessage(String cmd,Element xml)
+{
+   String rslt = null;
+   try {
+      BoardLog.logD("BIRD","Handle DIAD message " + cmd + " " +
+            IvyXml.convertXmlToString(xml));
+      switch (cmd) {
+         case "PING" :
+            rslt = "<PONG/>";
+            break;    
+         case "READY" :
+            serverReady("DIAD","message");
+            break;
+         case "UPDATE" :
+            update_dispatcher.postUpdate(xml);
+            break;
+         default :
+            BoardLog.logE("BRID","Unknown DIAD message " + cmd);
+            break;
+       }
     }
-   
-   @Override public void run() {
-      handleUpdate(update_xml);
+   catch (Throwable e) {
+      BoardLog.logE("BIRD","Error processing diad message",e);
     }
-   
-}       // end of inner class UpdateHanalder
+
+   return rslt;
+}
+
+
+/**
+ *      Handle the text of a message from DIAD.  Updates are handed to the
+ *      dispatcher as text so that no DOM is built for them.
+ **/
+
+String handleDiadMessage(String cmd,String text,Map<String,String> attrs)
+{
+   if (cmd.equals("UPDATE")) {
+      if (attrs == null) attrs = BirdXmlReader.getRootAttributes(text);
+      if (attrs != null && !BirdPayloadCodec.isCompressed(attrs)) {
+         BoardLog.logD("BIRD","Handle DIAD message " + cmd + " " +
+               BirdMessage.getLogText(text,log_size));
+         update_dispatcher.postUpdate(text);
+         return null;
+       }
+    }
+
+   Element xml = payload_codec.decode(IvyXml.convertStringToXml(text));
+
+   return handleDiadMessage(cmd,xml);
+}
+
+
+
+private final class DiadReplyHandler implements MintHandler {
+
+   @Override public void receive(MintMessage msg,MintArguments args) {
+      String rid = args.getArgument(0);
+      handleDeferredReply(rid,msg.getText(),null);
+      msg.replyTo(null);
+   }
+
+}       // end of inner class DiadReplyHandler
+
+
+
+private final class DiadMessageHandler implements MintHandler {
+
+   @Override public void receive(MintMessage msg,MintArguments args) {
+      String cmd = args.getArgument(0);
+      String rslt = handleDiadMessage(cmd,msg.getText(),null);
+      if (rslt == null) msg.replyTo();
+      else msg.replyTo(rslt);
+    }
+
+}       // end of inner class DiadMessageHandler
 
 
 /********************************************************************************/
@@ -841,7 +1662,7 @@ public static class BirdBubbleAction extends AbstractAction implements BddtConst
    @Override public BudaBubble createBubble() {
       BirdFactory fac = BirdFactory.getFactory();
       BirdDebugBubble bbl = new BirdDebugBubble(fac,launch_id); 
-      fac.debug_bubbles.put(bbl,Boolean.TRUE);
+      fac.addDebugSet(bbl,true);
       return bbl;
     }
    
@@ -860,7 +1681,7 @@ private final class StackTraceDebugAction implements BudaConstants.ButtonListene
    @Override public void buttonActivated(BudaBubbleArea bba,String id,Point pt) {
       BirdStackTraceBubble bbl = new BirdStackTraceBubble();
       bba.addBubble(bbl,null,pt,BudaConstants.PLACEMENT_RIGHT);
-      debug_bubbles.put(bbl,Boolean.TRUE);
+      addDebugSet(bbl,false);
     } 
     
 }   // end of inner class StackTraceDebugAction
@@ -0,0 +1,298 @@
+/********************************************************************************/
+/*                                                                              */
+/*              BirdHealth.java                                                 */
+/*                                                                              */
+/*      Heartbeat for DIAD and LIMBA driving a circuit breaker                  */
+/*                                                                              */
+/********************************************************************************/
+/*      Copyright 2025 Brown University -- Steven P. Reiss                    */
+/*********************************************************************************
+ *  Copyright 2025, Brown University, Providence, RI.                            *
+ *                                                                               *
+ *                        All Rights Reserved                                    *
+ *                                                                               *
+ * This program and the accompanying materials are made available under the      *
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution, *
+ * and is available at                                                           *
+ *      http://www.eclipse.org/legal/epl-v10.html                                *
+ *                                                                               *
+ ********************************************************************************/
+
+
+
+package edu.brown.cs.diadbb.bird;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.brown.cs.bubbles.board.BoardLog;
+import edu.brown.cs.bubbles.board.BoardProperties;
+import edu.brown.cs.bubbles.board.BoardSetup;
+import edu.brown.cs.ivy.mint.MintConstants;
+import edu.brown.cs.ivy.mint.MintControl;
+import edu.brown.cs.ivy.mint.MintDefaultReply;
+
+/**
+ *      A server that misses a heartbeat is SUSPECT.  A busy server (a long
+ *      GC, a slow Mint handler) can miss several, so a server only becomes
+ *      DOWN when its process exits or when it has missed every heartbeat
+ *      for a long time.  While a server is DOWN the factory fails new
+ *      requests that need it immediately instead of waiting for them to
+ *      time out.  Requests already sent are left to their own deadlines
+ *      unless the process has exited.  The heartbeat keeps pinging, so the
+ *      first answer brings the server back UP and requests flow again.
+ **/
+
+class BirdHealth implements BirdConstants, MintConstants
+{
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Private Storage                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+private BirdFactory     bird_factory;
+private ServerStatus    diad_status;
+private ServerStatus    limba_status;
+private long            ping_interval;
+private long            ping_timeout;
+private int             max_misses;
+private long            down_window;
+private List<BirdHealthListener> health_listeners;
+private Heartbeat       heartbeat_thread;
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Constructors                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+BirdHealth(BirdFactory bf)
+{
+   BoardProperties bp = BoardProperties.getProperties("Bird");
+
+   bird_factory = bf;
+   diad_status = new ServerStatus("DIAD","<DIAD DO='PING' />");
+   limba_status = new ServerStatus("LIMBA","<LIMBA DO='PING' />");
+   ping_interval = bp.getInt("Bird.heartbeat.interval",5000);
+   ping_timeout = bp.getInt("Bird.heartbeat.timeout",2000);
+   max_misses = Math.max(1,bp.getInt("Bird.heartbeat.misses",2));
+   down_window = bp.getInt("Bird.heartbeat.down",120000);
+   health_listeners = new ArrayList<>();
+   heartbeat_thread = null;
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Access methods                                                          */
+/*                                                                              */
+/********************************************************************************/
+
+BirdServerState getDiadState()                  { return diad_status.getState(); }
+
+BirdServerState getLimbaState()                 { return limba_status.getState(); }
+
+
+void addHealthListener(BirdHealthListener l)
+{
+   synchronized (health_listeners) {
+      health_listeners.add(l);
+    }
+}
+
+
+void removeHealthListener(BirdHealthListener l)
+{
+   synchronized (health_listeners) {
+      health_listeners.remove(l);
+    }
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Startup methods                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Note that a server has answered its startup ping.  The heartbeat
+ *      starts with the first server that is up.
+ **/
+
+void serverStarted(boolean diad)
+{
+   ServerStatus ss = (diad ? diad_status : limba_status);
+   ss.noteAnswer();
+
+   if (ping_interval <= 0) return;
+
+   synchronized (this) {
+      if (heartbeat_thread != null) return;
+      heartbeat_thread = new Heartbeat();
+      heartbeat_thread.start();
+    }
+}
+
+
+
+/**
+ *      Note that the process of a server we started or attached to has
+ *      exited.
+ **/
+
+void serverExited(boolean diad)
+{
+   ServerStatus ss = (diad ? diad_status : limba_status);
+   ss.noteExit();
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Heartbeat methods                                                       */
+/*                                                                              */
+/********************************************************************************/
+
+private void checkServers()
+{
+   diad_status.check();
+   limba_status.check();
+}
+
+
+private void noteChange(ServerStatus ss,BirdServerState prev,BirdServerState next,
+      boolean exited)
+{
+   BoardLog.logD("BIRD","Server " + ss.getName() + " is now " + next + " (was " + prev + ")" +
+         (exited ? " after exiting" : ""));
+
+   bird_factory.serverStateChanged(ss == diad_status,prev,next,exited);
+
+   List<BirdHealthListener> ls;
+   synchronized (health_listeners) {
+      ls = new ArrayList<>(health_listeners);
+    }
+   for (BirdHealthListener l : ls) {
+      try {
+         l.healthChanged(diad_status.getState(),limba_status.getState());
+       }
+      catch (Throwable t) {
+         BoardLog.logE("BIRD","Problem with health listener",t);
+       }
+    }
+}
+
+
+
+private final class Heartbeat extends Thread {
+
+   Heartbeat() {
+      super("BirdHeartbeat");
+      setDaemon(true);
+    }
+
+   @Override public void run() {
+      for ( ; ; ) {
+         try {
+            Thread.sleep(ping_interval);
+          }
+         catch (InterruptedException e) { }
+         try {
+            checkServers();
+          }
+         catch (Throwable t) {
+            BoardLog.logE("BIRD","Problem checking server health",t);
+          }
+       }
+    }
+
+}       // end of inner class Heartbeat
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Status of a single server                                               */
+/*                                                                              */
+/********************************************************************************/
+
+private final class ServerStatus {
+
+   private String server_name;
+   private String ping_message;
+   private volatile BirdServerState server_state;
+   private int miss_count;
+   private long first_miss;
+
+   ServerStatus(String nm,String msg) {
+      server_name = nm;
+      ping_message = msg;
+      server_state = BirdServerState.UNKNOWN;
+      miss_count = 0;
+      first_miss = 0;
+    }
+
+   String getName()                             { return server_name; }
+   BirdServerState getState()                   { return server_state; }
+
+   void check() {
+      // only servers we have seen are watched
+      if (server_state == BirdServerState.UNKNOWN) return;
+
+      MintControl mc = BoardSetup.getSetup().getMintControl();
+      MintDefaultReply rply = new MintDefaultReply();
+      mc.send(ping_message,rply,MINT_MSG_FIRST_NON_NULL);
+      String rslt = rply.waitForString(ping_timeout);
+      if (rslt != null) noteAnswer();
+      else noteMiss();
+    }
+
+   synchronized void noteAnswer() {
+      miss_count = 0;
+      first_miss = 0;
+      setState(BirdServerState.UP,false);
+    }
+
+   void noteExit() {
+      // a server that was never seen is still being started
+      if (server_state == BirdServerState.UNKNOWN) return;
+      setState(BirdServerState.DOWN,true);
+    }
+
+   private synchronized void noteMiss() {
+      long now = System.currentTimeMillis();
+      if (miss_count++ == 0) first_miss = now;
+      if (miss_count >= max_misses && now - first_miss >= down_window) {
+         setState(BirdServerState.DOWN,false);
+       }
+      else if (server_state == BirdServerState.UP) {
+         setState(BirdServerState.SUSPECT,false);
+       }
+    }
+
+   // synchronized so each change is seen, and reported, exactly once and in order
+   private synchronized void setState(BirdServerState st,boolean exited) {
+      BirdServerState prev = server_state;
+      if (prev == st) return;
+      server_state = st;
+      noteChange(this,prev,st,exited);
+    }
+
+}       // end of inner class ServerStatus
+
+
+}       // end of class BirdHealth
+
+
+
+
+/* end of BirdHealth.java */
@@ -23,13 +23,11 @@
 package edu.brown.cs.diadbb.bird;
 
 import java.awt.Color;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.EnumSet;
 
 import org.w3c.dom.Element;
 
 import edu.brown.cs.bubbles.board.BoardColors;
-import edu.brown.cs.ivy.xml.IvyXml;
 
 class BirdInstance implements BirdConstants
 {
@@ -41,23 +39,10 @@ class BirdInstance implements BirdConstants
 /*                                                                              */
 /********************************************************************************/
 
-private Element         instance_xml;
+private BirdCandidate   instance_data;
+private EnumSet<DiadCandidateChange> last_changes;
 private boolean         should_save;
 
-private static final Map<DiadValueOperator,String> OP_NAMES;
-
-static {
-   OP_NAMES = new HashMap<>();
-   OP_NAMES.put(DiadValueOperator.EQL,"==");
-   OP_NAMES.put(DiadValueOperator.GEQ,">=");
-   OP_NAMES.put(DiadValueOperator.GTR,">");
-   OP_NAMES.put(DiadValueOperator.LEQ,"<=");
-   OP_NAMES.put(DiadValueOperator.LSS,"<");
-   OP_NAMES.put(DiadValueOperator.NEQ,"!=");
-   OP_NAMES.put(DiadValueOperator.CONTAINS,"CONTAINS");
-   OP_NAMES.put(DiadValueOperator.NOTCONTAINS,"NOT CONTAINS"); 
-}
-
 
 
 /********************************************************************************/
@@ -66,9 +51,10 @@ static {
 /*                                                                              */
 /********************************************************************************/
 
-BirdInstance(Element xml)
+BirdInstance(BirdCandidate cand)
 {
-   instance_xml = xml;
+   instance_data = cand;
+   last_changes = EnumSet.allOf(DiadCandidateChange.class);
    should_save = false;
 }
 
@@ -81,124 +67,53 @@ BirdInstance(Element xml)
 
 String getId()                 
 { 
-   return IvyXml.getAttrString(instance_xml,"ID"); 
+   return instance_data.getId();
 }
 
 DiadCandidateState getState() 
 {
-   return IvyXml.getAttrEnum(instance_xml,"STATE",DiadCandidateState.DEAD);
+   return instance_data.getState();
 }
 
 String getTitle()
 {
-   Element thrd = IvyXml.getChild(instance_xml,"THREAD");
-   String name = IvyXml.getAttrString(thrd,"NAME");
-   if (name != null && !name.isEmpty()) return name;
-   
-   return getId();
+   return instance_data.getTitle();
 }
 
 
 String getResponse()
 {
-   return IvyXml.getTextElement(instance_xml,"RESPONSE");
+   return instance_data.getResponse();
 }
 
 
 boolean getAutoQuery()
 {
-   return IvyXml.getAttrBool(instance_xml,"AUTO_QUERY");
+   return instance_data.getAutoQuery();
+}
+
+
+String getFingerprint()
+{
+   return instance_data.getFingerprint();
+}
+
+
+String getStoreFingerprint()
+{
+   return instance_data.getStoreFingerprint();
 }
 
 
 String getLocationString()
 {
-   Element frm = IvyXml.getChild(instance_xml,"FRAME");
-   if (frm == null) {
-      return "<TBD>";
-    }
-   
-   String cnm = IvyXml.getAttrString(frm,"CLASS");
-   String mnm = IvyXml.getAttrString(frm,"METHOD");
-   String line = IvyXml.getAttrString(frm,"LINE");
-   
-   if (cnm != null && !cnm.isEmpty()) {
-      cnm = getShortName(cnm) + ".";
-    }
-   else cnm = "";
-   if (line != null && !line.isEmpty()) {
-      line = line + " @ ";
-    }
-   else line = "";
-   
-   if (mnm == null) mnm = "<TBD>";
-   
-   return line + cnm + mnm;
+   return instance_data.getLocationString();
 }
 
 
 String getSymptomString()
 {
-   Element symp = IvyXml.getChild(instance_xml,"SYMPTOM");
-   DiadSymptomType typ = IvyXml.getAttrEnum(symp,"TYPE",DiadSymptomType.NONE);
-   String itm = IvyXml.getTextElement(symp,"ITEM");
-   String orig = IvyXml.getTextElement(symp,"ORIGINAL");
-   String tgt = IvyXml.getTextElement(symp,"TARGET");
-   DiadValueOperator op = IvyXml.getAttrEnum(symp,"OPERATOR",DiadValueOperator.NONE);
-   double prec = IvyXml.getAttrDouble(symp,"PRECISION",0);
-   
-   String ops = OP_NAMES.get(op);
-   if (ops == null) {
-      ops = op.toString();
-    }
-   
-   switch (typ) {
-      case NONE :
-         return "No Symptom Found";
-      case EXCEPTION :
-         return "Exception " + getShortName(itm) + " was thrown";
-      case LIBRARY_EXCEPTION :
-         String rtn = IvyXml.getTextElement(symp,"ORIGINAL");
-         if (rtn != null && !rtn.isEmpty()) {
-            int idx = rtn.lastIndexOf(";");
-            if (rtn.equals("<init>")) rtn = "Constructor";
-            else if (idx > 0) {
-               rtn = "``" + rtn.substring(0,idx) + "''";
-             }
-            else rtn = "Method " + rtn;
-            return rtn + " throws " + getShortName(itm);
-          }
-         else {
-            return "Exception " + getShortName(itm) + " was thrown in library";
-          }
-      case ASSERTION :
-         String cnts = null;
-         if (op != DiadValueOperator.NONE && orig != null && tgt != null) {
-            if (prec != 0) ops = "~" + ops;
-            cnts = orig + " " + ops + " " + tgt;
-          }
-         else if (itm != null) {
-            cnts = itm;
-          }
-         else if (orig != null) {
-            cnts = orig;
-          }
-         if (cnts == null) return "Assertion failed";
-         else return "Assertion failed: " + cnts;
-      case VARIABLE :
-         return "Variable " + itm + " = " + orig + ", should be " + tgt;
-      case EXPRESSION :
-         return "Expression " + itm + " = " + orig + ", should be " + tgt;
-      case LOCATION :
-         return "Execution should not be here";
-      case NO_EXCEPTION :
-         return "Exception " + getShortName(itm) + " should have been thrown";
-      case OTHER :
-         String desc = IvyXml.getTextElement(symp,"USER");
-         if (desc != null && !desc.isEmpty()) return desc;
-         return "User Defined Problem";
-    }
-   return "SYMPTOM";
+   return instance_data.getSymptomString();
 }
 
 
@@ -240,30 +155,25 @@ Color getTabColor()
 
 
 
-private String getShortName(String nm)
-{
-   if (nm == null) return null;
-   int idx = nm.lastIndexOf(".");
-   if (idx >= 0) {
-      nm = nm.substring(idx+1);
-    }
-   return nm; 
-}
-
-
 boolean isShouldSave()                          { return should_save; }
 void setShouldSave(boolean fg)                  { should_save = fg; }
 
-Element getXml()                                { return instance_xml; }
+Element getXml()                                { return instance_data.getXml(); }
 
-String getStartFrameId() {
-   Element xml = IvyXml.getChild(instance_xml,"STARTFRAME");
-   Element xml1 = IvyXml.getChild(xml,"FRAME");
-   String id = IvyXml.getAttrString(xml1,"ID");
-   return id;
+String getStartFrameId() 
+{
+   return instance_data.getStartFrameId();
 }
 
 
+/**
+ *      Return what changed in the most recent update applied to this
+ *      instance.
+ **/
+
+EnumSet<DiadCandidateChange> getLastChanges()   { return last_changes; }
+
+
 
 /********************************************************************************/
 /*                                                                              */
@@ -273,20 +183,15 @@ String getStartFrameId() {
 
 boolean shouldRemove()
 {
-   switch (getState()) {
-      case DEAD :
-      case INTERRUPTED :  
-         return true;
-    }
-   
-   return false;
+   return instance_data.shouldRemove();
 }
 
 
 
-void update(Element xml)
+void update(BirdCandidate cand,EnumSet<DiadCandidateChange> chng)
 {
-   instance_xml = xml;
+   instance_data = cand;
+   last_changes = chng;
 }
 
 
@@ -0,0 +1,423 @@
+/********************************************************************************/
+/*                                                                              */
+/*              BirdLauncher.java                                               */
+/*                                                                              */
+/*      Build the command lines used to run DIAD and LIMBA                      */
+/*                                                                              */
+/********************************************************************************/
+/*      Copyright 2025 Brown University -- Steven P. Reiss                    */
+/*********************************************************************************
+ *  Copyright 2025, Brown University, Providence, RI.                            *
+ *                                                                               *
+ *                        All Rights Reserved                                    *
+ *                                                                               *
+ * This program and the accompanying materials are made available under the      *
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution, *
+ * and is available at                                                           *
+ *      http://www.eclipse.org/legal/epl-v10.html                                *
+ *                                                                               *
+ ********************************************************************************/
+
+
+
+package edu.brown.cs.diadbb.bird;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.StringTokenizer;
+import java.util.zip.CRC32;
+
+import edu.brown.cs.bubbles.board.BoardLog;
+import edu.brown.cs.bubbles.board.BoardProperties;
+import edu.brown.cs.bubbles.board.BoardSetup;
+import edu.brown.cs.ivy.exec.IvyExecQuery;
+
+/**
+ *      The class path for a server is given as a list of jar names that
+ *      have to be found in the library directory, the dropins directory
+ *      or elsewhere.  Finding them means probing the file system for each
+ *      element, so the result is saved in <workspace>/.bird/classpath.props
+ *      along with the modification time of each jar found.  The saved path
+ *      is used as long as the specification and the directories it is
+ *      resolved against are the same and each jar still has the same time.
+ *
+ *      Where the JVM supports it (13 and later) the first run of a server
+ *      with a given class path dumps the classes it loaded into a CDS
+ *      archive when it exits; later runs map that archive rather than
+ *      loading and verifying the classes again.  The archive name includes
+ *      a fingerprint of the class path, the JVM and its options so a change
+ *      to any of them makes a new one.
+ *
+ *      The JVM options for a server come from a named launch profile.
+ *      Bird.<server>.profile names the profile and
+ *      Bird.launch.profile.<name> gives its options.
+ **/
+
+class BirdLauncher implements BirdConstants
+{
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Private Storage                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+private File            cache_file;
+private Properties      cache_props;
+private boolean         use_archive;
+
+private static final String CACHE_DIR = ".bird";
+private static final String CACHE_NAME = "classpath.props";
+private static final String MISSING_STAMP = "0";
+private static final String ARCHIVE_EXT = ".jsa";
+private static final String SHARED_ARG = "-XX:SharedArchiveFile=";
+private static final String DUMP_ARG = "-XX:ArchiveClassesAtExit=";
+private static final String PROFILE_ARG = "-Dedu.brown.cs.diadbb.profile=";
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Constructors                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+BirdLauncher(File wsdir)
+{
+   BoardProperties bp = BoardProperties.getProperties("Bird");
+
+   cache_file = new File(new File(wsdir,CACHE_DIR),CACHE_NAME);
+   cache_props = null;
+   use_archive = bp.getBoolean("Bird.cds",true) && Runtime.version().feature() >= 13;
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Command methods                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Return the start of the command to run a server: java, the options
+ *      from its launch profile, its class data sharing option, its class
+ *      path and the main class.  The caller adds the server's arguments.
+ **/
+
+List<String> getCommand(String server,String cp,String main)
+{
+   List<String> args = new ArrayList<>();
+   args.add(IvyExecQuery.getJavaPath());
+   String opts = addProfile(server,args);
+   if (use_archive) {
+      File jsa = getArchive(server,cp,opts);
+      if (jsa.exists()) args.add(SHARED_ARG + jsa.getPath());
+      else args.add(DUMP_ARG + jsa.getPath());
+    }
+   args.add("-cp");
+   args.add(cp);
+   args.add(main);
+
+   return args;
+}
+
+
+/**
+ *      Return true for an argument that only says how classes are shared.
+ *      These change from the first run to later ones without changing the
+ *      server that is run.
+ **/
+
+static boolean isArchiveArg(String arg)
+{
+   return arg.startsWith(SHARED_ARG) || arg.startsWith(DUMP_ARG);
+}
+
+
+/**
+ *      Add the options of the server's launch profile and return them.  The
+ *      profile name is passed as a system property so the server can report
+ *      it.
+ **/
+
+private String addProfile(String server,List<String> args)
+{
+   BoardProperties bp = BoardProperties.getProperties("Bird");
+   String name = bp.getProperty("Bird." + server.toLowerCase() + ".profile");
+   if (name == null || name.isEmpty()) name = "default";
+
+   String opts = bp.getProperty("Bird.launch.profile." + name);
+   if (opts == null) {
+      BoardLog.logE("BIRD","Unknown launch profile " + name + " for " + server);
+      name = "default";
+      opts = bp.getProperty("Bird.launch.profile." + name);
+    }
+
+   args.add(PROFILE_ARG + name);
+   if (opts != null) {
+      StringTokenizer tok = new StringTokenizer(opts);
+      while (tok.hasMoreTokens()) {
+         args.add(tok.nextToken());
+       }
+    }
+
+   if (opts == null) opts = "";
+   BoardLog.logI("BIRD","Launch " + server + " with profile " + name + ": " + opts.trim());
+
+   return opts.trim();
+}
+
+
+static String getArchiveMode(List<String> args)
+{
+   for (String arg : args) {
+      if (arg.startsWith(SHARED_ARG)) return "shared archive";
+      if (arg.startsWith(DUMP_ARG)) return "creating archive";
+    }
+
+   return "no archive";
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Class path methods                                                      */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Return the class path for a server.  If spec is null the current
+ *      class path is used, with addpath in front of it.  Otherwise each
+ *      relative element of spec is resolved: selfname stands for selfjar,
+ *      other names are looked up in the library and dropins directories,
+ *      and then tried as fallback if that is given.
+ **/
+
+synchronized String getClassPath(String server,String spec,String addpath,
+      String selfname,File selfjar,File fallback)
+{
+   if (spec == null) {
+      String cp = System.getProperty("java.class.path");
+      if (addpath != null) cp = addpath + File.pathSeparator + cp;
+      return cp;
+    }
+
+   BoardSetup setup = BoardSetup.getSetup();
+   String key = getCacheKey(setup,spec,selfjar);
+   String cp = getCachedPath(server,key);
+   if (cp != null) {
+      BoardLog.logD("BIRD","Use cached class path for " + server);
+      return cp;
+    }
+
+   StringBuffer buf = new StringBuffer();
+   StringTokenizer tok = new StringTokenizer(spec,":;");
+   while (tok.hasMoreTokens()) {
+      String elt = tok.nextToken();
+      if (!elt.startsWith("/") &&  !elt.startsWith("\\")) {
+         if (elt.equals("eclipsejar")) {
+            elt = setup.getEclipsePath();
+          }
+         else if (elt.equals(selfname) && selfjar != null) {
+            elt = selfjar.getPath();
+          }
+         else {
+            String oelt = elt;
+            elt = setup.getLibraryPath(elt);
+            File f1 = new File(elt);
+            if (!f1.exists()) {
+               File f0 = setup.getLibraryDirectory().getParentFile();
+               File f2 = new File(f0,"dropins");
+               File f3 = new File(f2,oelt);
+               if (f3.exists()) {
+                  f1 = f3;
+                  elt = f3.getPath();
+                }
+             }
+            if (!f1.exists() && fallback != null && fallback.exists()) {
+               elt = fallback.getPath();
+             }
+            BoardLog.logD("BIRD","Use class path " + server + " element " + elt);
+          }
+       }
+      if (buf.length() > 0) buf.append(File.pathSeparator);
+      buf.append(elt);
+    }
+   cp = buf.toString();
+
+   saveCachedPath(server,key,cp);
+
+   return cp;
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Cache methods                                                           */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      The key is what the resolved path depends on: the specification and
+ *      the places its elements are looked for.  If Bubbles moves, the same
+ *      specification resolves differently even while the old jars exist.
+ *      The times of the library and dropins directories change when a jar
+ *      is added to either, which can also change where an element is found.
+ **/
+
+private static String getCacheKey(BoardSetup setup,String spec,File selfjar)
+{
+   File lib = setup.getLibraryDirectory();
+   File drop = new File(lib.getParentFile(),"dropins");
+
+   StringBuffer buf = new StringBuffer();
+   buf.append(spec);
+   buf.append("|");
+   buf.append(lib);
+   buf.append(",");
+   buf.append(Long.toHexString(lib.lastModified()));
+   buf.append(",");
+   buf.append(Long.toHexString(drop.lastModified()));
+   buf.append("|");
+   buf.append(setup.getEclipsePath());
+   buf.append("|");
+   if (selfjar != null) buf.append(selfjar.getPath());
+
+   return buf.toString();
+}
+
+
+private String getCachedPath(String server,String spec)
+{
+   Properties p = loadCache();
+   if (!spec.equals(p.getProperty(server + ".spec"))) return null;
+   String cp = p.getProperty(server + ".path");
+   String stamp = p.getProperty(server + ".stamp");
+   if (cp == null || stamp == null) return null;
+
+   // a path with a missing jar is never saved, but an old cache might have one
+   if (stamp.equals(MISSING_STAMP) || !stamp.equals(getStamp(cp))) {
+      BoardLog.logD("BIRD","Class path for " + server + " has changed");
+      return null;
+    }
+
+   return cp;
+}
+
+
+private void saveCachedPath(String server,String spec,String cp)
+{
+   String stamp = getStamp(cp);
+   if (stamp.equals(MISSING_STAMP)) {
+      // resolve again next time in case the jar is installed
+      BoardLog.logD("BIRD","Class path for " + server + " has a missing element");
+      return;
+    }
+
+   Properties p = loadCache();
+   p.setProperty(server + ".spec",spec);
+   p.setProperty(server + ".path",cp);
+   p.setProperty(server + ".stamp",stamp);
+
+   cache_file.getParentFile().mkdirs();
+   try (FileOutputStream fos = new FileOutputStream(cache_file)) {
+      p.store(fos,"Resolved server class paths");
+    }
+   catch (IOException e) {
+      BoardLog.logD("BIRD","Can't save class path cache: " + e);
+    }
+}
+
+
+private Properties loadCache()
+{
+   if (cache_props != null) return cache_props;
+
+   cache_props = new Properties();
+   if (cache_file.exists()) {
+      try (FileInputStream fis = new FileInputStream(cache_file)) {
+         cache_props.load(fis);
+       }
+      catch (IOException e) {
+         cache_props.clear();
+       }
+    }
+
+   return cache_props;
+}
+
+
+/**
+ *      Return the archive for the server's current class path and JVM
+ *      options, removing any left from earlier ones.  The options matter
+ *      since the JVM won't map an archive dumped with, for example, a
+ *      different collector or heap layout.
+ **/
+
+private File getArchive(String server,String cp,String opts)
+{
+   CRC32 crc = new CRC32();
+   crc.update(cp.getBytes(StandardCharsets.UTF_8));
+   crc.update(getStamp(cp).getBytes(StandardCharsets.UTF_8));
+   crc.update(opts.getBytes(StandardCharsets.UTF_8));
+   String jvm = System.getProperty("java.home") + System.getProperty("java.vm.version");
+   crc.update(jvm.getBytes(StandardCharsets.UTF_8));
+
+   String pfx = server.toLowerCase() + "-";
+   String name = pfx + Long.toHexString(crc.getValue()) + ARCHIVE_EXT;
+   File dir = cache_file.getParentFile();
+   dir.mkdirs();
+
+   File [] old = dir.listFiles();
+   if (old != null) {
+      for (File f : old) {
+         String fnm = f.getName();
+         if (fnm.startsWith(pfx) && fnm.endsWith(ARCHIVE_EXT) && !fnm.equals(name)) {
+            BoardLog.logD("BIRD","Remove old class archive " + f);
+            f.delete();
+          }
+       }
+    }
+
+   return new File(dir,name);
+}
+
+
+/**
+ *      The stamp is the list of modification times of the path elements.
+ *      If any element is missing the stamp is MISSING_STAMP, which is
+ *      never saved or accepted.
+ **/
+
+private static String getStamp(String cp)
+{
+   StringBuffer buf = new StringBuffer();
+   StringTokenizer tok = new StringTokenizer(cp,File.pathSeparator);
+   while (tok.hasMoreTokens()) {
+      File f = new File(tok.nextToken());
+      long dlm = f.lastModified();
+      if (dlm == 0) return MISSING_STAMP;
+      if (buf.length() > 0) buf.append(",");
+      buf.append(Long.toHexString(dlm));
+    }
+
+   return buf.toString();
+}
+
+
+}       // end of class BirdLauncher
+
+
+
+
+/* end of BirdLauncher.java */
@@ -0,0 +1,190 @@
+/********************************************************************************/
+/*                                                                              */
+/*              BirdMessage.java                                                */
+/*                                                                              */
+/*      Single pass builder for messages sent to DIAD                           */
+/*                                                                              */
+/********************************************************************************/
+/*      Copyright 2025 Brown University -- Steven P. Reiss                    */
+/*********************************************************************************
+ *  Copyright 2025, Brown University, Providence, RI.                            *
+ *                                                                               *
+ *                        All Rights Reserved                                    *
+ *                                                                               *
+ * This program and the accompanying materials are made available under the      *
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution, *
+ * and is available at                                                           *
+ *      http://www.eclipse.org/legal/epl-v10.html                                *
+ *                                                                               *
+ ********************************************************************************/
+
+
+
+package edu.brown.cs.diadbb.bird;
+
+import java.util.Map;
+
+import edu.brown.cs.ivy.mint.MintConstants.CommandArgs;
+import edu.brown.cs.ivy.xml.IvyXmlWriter;
+
+/**
+ *      The DIAD element and its arguments are written first and the body
+ *      is then written into the same writer, so the message text is only
+ *      produced once, when it is sent.
+ **/
+
+class BirdMessage implements BirdConstants
+{
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Private Storage                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+private String          command_name;
+private IvyXmlWriter    xml_writer;
+private boolean         has_body;
+private String          message_text;
+private long            message_timeout;
+
+private static final String END_TAG = "</DIAD>";
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Constructors                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+BirdMessage(String cmd,CommandArgs args)
+{
+   command_name = cmd;
+   has_body = false;
+   message_text = null;
+   message_timeout = 0;
+
+   xml_writer = new IvyXmlWriter();
+   xml_writer.begin("DIAD");
+   xml_writer.field("DO",cmd);
+   if (args != null) {
+      for (Map.Entry<String,Object> ent : args.entrySet()) {
+         xml_writer.field(ent.getKey(),ent.getValue());
+       }
+    }
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Body methods                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+String getCommand()                             { return command_name; }
+
+
+/**
+ *      Set how long to wait for the reply, overriding the deadline of the
+ *      command.  A batch uses this since its commands set its deadline.
+ **/
+
+void setTimeout(long t)                         { message_timeout = t; }
+
+long getTimeout()                               { return message_timeout; }
+
+
+/**
+ *      Return the writer for the message body.  Anything written to it
+ *      after the message is finished is lost.
+ **/
+
+IvyXmlWriter getWriter()
+{
+   has_body = true;
+   return xml_writer;
+}
+
+
+void addXml(String cnts)
+{
+   if (cnts == null) return;
+   has_body = true;
+   xml_writer.xmlText(cnts);
+}
+
+
+void addCdata(String elt,String text)
+{
+   if (elt == null) {
+      addXml(text);
+      return;
+    }
+   has_body = true;
+   xml_writer.cdataElement(elt,text);
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Output methods                                                          */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Finish the message and return its text, compressing the body if
+ *      it is large enough and DIAD supports it.
+ **/
+
+String getText(BirdPayloadCodec codec)
+{
+   if (message_text != null) return message_text;
+
+   xml_writer.end("DIAD");
+   message_text = xml_writer.toString();
+   xml_writer.close();
+   xml_writer = null;
+
+   if (has_body && codec != null && codec.shouldCompress(message_text)) {
+      int start = message_text.indexOf(">");
+      int end = message_text.lastIndexOf(END_TAG);
+      if (start > 0 && end > start && message_text.charAt(start-1) != '/') {
+         String body = message_text.substring(start+1,end);
+         StringBuffer buf = new StringBuffer();
+         buf.append(message_text,0,start);
+         buf.append(" COMPRESSED='" + BirdPayloadCodec.ENCODING + "'");
+         buf.append(" RAWSIZE='" + body.length() + "'>");
+         buf.append("<PAYLOAD><![CDATA[");
+         buf.append(codec.encodePayload(body));
+         buf.append("]]></PAYLOAD>");
+         buf.append(END_TAG);
+         message_text = buf.toString();
+       }
+    }
+
+   return message_text;
+}
+
+
+/**
+ *      Return a prefix of the message text suitable for logging.
+ **/
+
+static String getLogText(String text,int max)
+{
+   if (text == null || max <= 0 || text.length() <= max) return text;
+
+   return text.substring(0,max) + "... (" + text.length() + " chars)";
+}
+
+
+}       // end of class BirdMessage
+
+
+
+
+/* end of BirdMessage.java */
@@ -0,0 +1,255 @@
+/********************************************************************************/
+/*                                                                              */
+/*              BirdPayloadCodec.java                                           */
+/*                                                                              */
+/*      Compression of large message bodies exchanged with DIAD                 */
+/*                                                                              */
+/********************************************************************************/
+/*      Copyright 2025 Brown University -- Steven P. Reiss                    */
+/*********************************************************************************
+ *  Copyright 2025, Brown University, Providence, RI.                            *
+ *                                                                               *
+ *                        All Rights Reserved                                    *
+ *                                                                               *
+ * This program and the accompanying materials are made available under the      *
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution, *
+ * and is available at                                                           *
+ *      http://www.eclipse.org/legal/epl-v10.html                                *
+ *                                                                               *
+ ********************************************************************************/
+
+
+
+package edu.brown.cs.diadbb.bird;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NamedNodeMap;
+
+import edu.brown.cs.bubbles.board.BoardLog;
+import edu.brown.cs.ivy.xml.IvyXml;
+import edu.brown.cs.ivy.xml.IvyXmlWriter;
+
+/**
+ *      A compressed message has COMPRESSED='deflate' and RAWSIZE attributes
+ *      on its top level element and a single PAYLOAD child holding the
+ *      base64 encoding of the deflated contents.  Compression is only used
+ *      once DIAD has said in its PONG that it understands it.
+ **/
+
+class BirdPayloadCodec implements BirdConstants
+{
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Private Storage                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+private boolean         use_compression;
+private int             min_size;
+private long            raw_bytes;
+private long            encoded_bytes;
+private long            encode_time;
+private long            decode_time;
+private int             message_count;
+
+static final String     ENCODING = "deflate";
+
+private static final int LOG_INTERVAL = 100;
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Constructors                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+BirdPayloadCodec(int minsize)
+{
+   use_compression = false;
+   min_size = minsize;
+   raw_bytes = 0;
+   encoded_bytes = 0;
+   encode_time = 0;
+   decode_time = 0;
+   message_count = 0;
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Access methods                                                          */
+/*                                                                              */
+/********************************************************************************/
+
+void setEnabled(boolean fg)                     { use_compression = fg; }
+
+boolean isEnabled()                             { return use_compression; }
+
+/**
+ *      Check the attributes of the top level element of a message to see
+ *      if its body is compressed.
+ **/
+
+static boolean isCompressed(Map<String,String> attrs)
+{
+   return attrs != null && attrs.get("COMPRESSED") != null;
+}
+
+
+boolean shouldCompress(String cnts)
+{
+   return use_compression && min_size > 0 && cnts != null && cnts.length() >= min_size;
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Encoding methods                                                        */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Return the base64 encoding of the compressed contents.
+ **/
+
+String encodePayload(String cnts)
+{
+   long start = System.nanoTime();
+   byte [] raw = cnts.getBytes(StandardCharsets.UTF_8);
+   Deflater def = new Deflater(Deflater.BEST_SPEED);
+   def.setInput(raw);
+   def.finish();
+   ByteArrayOutputStream bos = new ByteArrayOutputStream(raw.length / 4 + 64);
+   byte [] buf = new byte[8192];
+   while (!def.finished()) {
+      int ln = def.deflate(buf);
+      bos.write(buf,0,ln);
+    }
+   def.end();
+   String enc = Base64.getEncoder().encodeToString(bos.toByteArray());
+
+   noteMessage(raw.length,enc.length(),System.nanoTime() - start,0);
+
+   return enc;
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Decoding methods                                                        */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Return the message with its payload expanded, or the message itself
+ *      if it was not compressed.
+ **/
+
+Element decode(Element xml)
+{
+   if (xml == null) return null;
+   String enc = IvyXml.getAttrString(xml,"COMPRESSED");
+   if (enc == null) return xml;
+   if (!enc.equals(ENCODING)) {
+      BoardLog.logE("BIRD","Unknown message encoding " + enc);
+      return xml;
+    }
+
+   long start = System.nanoTime();
+   String data = IvyXml.getTextElement(xml,"PAYLOAD");
+   if (data == null) return xml;
+   int rawsize = IvyXml.getAttrInt(xml,"RAWSIZE",data.length() * 4);
+
+   String cnts = null;
+   try {
+      byte [] bytes = Base64.getDecoder().decode(data.trim());
+      Inflater inf = new Inflater();
+      inf.setInput(bytes);
+      ByteArrayOutputStream bos = new ByteArrayOutputStream(Math.max(rawsize,64));
+      byte [] buf = new byte[8192];
+      while (!inf.finished()) {
+         int ln = inf.inflate(buf);
+         if (ln == 0 && (inf.needsInput() || inf.needsDictionary())) break;
+         bos.write(buf,0,ln);
+       }
+      inf.end();
+      cnts = new String(bos.toByteArray(),StandardCharsets.UTF_8);
+    }
+   catch (IllegalArgumentException | DataFormatException e) {
+      BoardLog.logE("BIRD","Problem decoding compressed message",e);
+      return xml;
+    }
+
+   // rebuild the message with the original contents in place of the payload
+   IvyXmlWriter xw = new IvyXmlWriter();
+   xw.begin(xml.getNodeName());
+   NamedNodeMap attrs = xml.getAttributes();
+   for (int i = 0; i < attrs.getLength(); ++i) {
+      Node n = attrs.item(i);
+      String nm = n.getNodeName();
+      if (nm.equals("COMPRESSED") || nm.equals("RAWSIZE")) continue;
+      xw.field(nm,n.getNodeValue());
+    }
+   xw.xmlText(cnts);
+   xw.end(xml.getNodeName());
+   Element rslt = IvyXml.convertStringToXml(xw.toString());
+   xw.close();
+
+   noteMessage(cnts.length(),data.length(),0,System.nanoTime() - start);
+
+   return rslt;
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Statistics methods                                                      */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Keep track of sizes and times so the benefit of compression can be
+ *      judged from the log.
+ **/
+
+private synchronized void noteMessage(long raw,long enc,long etime,long dtime)
+{
+   raw_bytes += raw;
+   encoded_bytes += enc;
+   encode_time += etime;
+   decode_time += dtime;
+   ++message_count;
+
+   BoardLog.logD("BIRD","Compressed payload " + raw + " -> " + enc + " bytes in " +
+         (etime + dtime) / 1000 + " us");
+
+   if (message_count % LOG_INTERVAL == 0) {
+      BoardLog.logI("BIRD","Payload compression: " + message_count + " messages, " +
+            raw_bytes + " -> " + encoded_bytes + " bytes, encode " +
+            encode_time / 1000000 + " ms, decode " + decode_time / 1000000 + " ms");
+    }
+}
+
+
+}       // end of class BirdPayloadCodec
+
+
+
+
+/* end of BirdPayloadCodec.java */
@@ -0,0 +1,209 @@
+/********************************************************************************/
+/*                                                                              */
+/*              BirdPipeline.java                                               */
+/*                                                                              */
+/*      Window of outstanding DIAD requests for a single debug candidate        */
+/*                                                                              */
+/********************************************************************************/
+/*      Copyright 2025 Brown University -- Steven P. Reiss                    */
+/*********************************************************************************
+ *  Copyright 2025, Brown University, Providence, RI.                            *
+ *                                                                               *
+ *                        All Rights Reserved                                    *
+ *                                                                               *
+ * This program and the accompanying materials are made available under the      *
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution, *
+ * and is available at                                                           *
+ *      http://www.eclipse.org/legal/epl-v10.html                                *
+ *                                                                               *
+ ********************************************************************************/
+
+
+
+package edu.brown.cs.diadbb.bird;
+
+import java.util.LinkedList;
+import java.util.Queue;
+
+import org.w3c.dom.Element;
+
+import edu.brown.cs.bubbles.board.BoardLog;
+import edu.brown.cs.ivy.mint.MintConstants.CommandArgs;
+
+class BirdPipeline implements BirdConstants
+{
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Private Storage                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+private BirdFactory     bird_factory;
+private String          debug_id;
+private int             window_size;
+private int             in_flight;
+private Queue<PipelineRequest> waiting_requests;
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Constructors                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+BirdPipeline(BirdFactory bf,String id,int window)
+{
+   bird_factory = bf;
+   debug_id = id;
+   window_size = Math.max(1,window);
+   in_flight = 0;
+   waiting_requests = new LinkedList<>();
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Request methods                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Queue a deferred command for this candidate.  The command is sent
+ *      immediately if fewer than window_size commands are outstanding;
+ *      otherwise it is sent, in order, as earlier replies arrive.  The reply
+ *      is matched back to the handler through the returned request id.
+ **/
+
+String submit(String cmd,CommandArgs args,String elt,String body,ResponseHandler hdlr)
+{
+   PipelineRequest pr = new PipelineRequest(cmd,args,elt,body);
+   // the deadline starts when the command is actually sent
+   String rid = bird_factory.registerQueuedReply(cmd,pr);
+   pr.setup(rid,hdlr);
+
+   boolean send = false;
+   synchronized (this) {
+      if (in_flight < window_size) {
+         ++in_flight;
+         pr.setSent();
+         send = true;
+       }
+      else {
+         waiting_requests.add(pr);
+         BoardLog.logD("BIRD","Queue " + cmd + " for " + debug_id +
+               " behind " + in_flight + " requests");
+       }
+    }
+
+   if (send) pr.send();
+
+   return rid;
+}
+
+
+synchronized int getInFlightCount()
+{
+   return in_flight;
+}
+
+
+synchronized int getWaitingCount()
+{
+   return waiting_requests.size();
+}
+
+
+private void finished(PipelineRequest pr)
+{
+   PipelineRequest next = null;
+   synchronized (this) {
+      if (!pr.isSent()) {
+         waiting_requests.remove(pr);
+         return;
+       }
+      --in_flight;
+      if (in_flight < window_size) {
+         next = waiting_requests.poll();
+         if (next != null) {
+            ++in_flight;
+            next.setSent();
+          }
+       }
+    }
+
+   if (next != null) next.send();
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Request information                                                     */
+/*                                                                              */
+/********************************************************************************/
+
+private final class PipelineRequest implements StreamHandler, CancelHandler {
+
+   private String command_name;
+   private CommandArgs command_args;
+   private String body_element;
+   private String command_body;
+   private String request_id;
+   private ResponseHandler response_handler;
+   private boolean is_sent;
+
+   PipelineRequest(String cmd,CommandArgs args,String elt,String body) {
+      command_name = cmd;
+      command_args = args;
+      body_element = elt;
+      command_body = body;
+      request_id = null;
+      response_handler = null;
+      is_sent = false;
+    }
+
+   void setup(String rid,ResponseHandler hdlr) {
+      request_id = rid;
+      response_handler = hdlr;
+    }
+
+   boolean isSent()                             { return is_sent; }
+   void setSent()                               { is_sent = true; }
+
+   void send() {
+      bird_factory.startReplyTimer(request_id);
+      bird_factory.sendDeferredCommand(command_name,command_args,body_element,
+            command_body,request_id);
+    }
+
+   @Override public void handlePartial(String text) {
+      if (response_handler instanceof StreamHandler) {
+         StreamHandler shdlr = (StreamHandler) response_handler;
+         shdlr.handlePartial(text);
+       }
+    }
+
+   @Override public boolean handleCancel() {
+      boolean sent = isSent();
+      finished(this);
+      return sent;
+    }
+
+   @Override public void handleResponse(Element xml) {
+      finished(this);
+      response_handler.handleResponse(xml);
+    }
+
+}       // end of inner class PipelineRequest
+
+
+}       // end of class BirdPipeline
+
+
+
+
+/* end of BirdPipeline.java */
@@ -0,0 +1,288 @@
+/********************************************************************************/
+/*                                                                              */
+/*              BirdPrefetcher.java                                             */
+/*                                                                              */
+/*      Background queries for candidates that become ready                     */
+/*                                                                              */
+/********************************************************************************/
+/*      Copyright 2025 Brown University -- Steven P. Reiss                    */
+/*********************************************************************************
+ *  Copyright 2025, Brown University, Providence, RI.                            *
+ *                                                                               *
+ *                        All Rights Reserved                                    *
+ *                                                                               *
+ * This program and the accompanying materials are made available under the      *
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution, *
+ * and is available at                                                           *
+ *      http://www.eclipse.org/legal/epl-v10.html                                *
+ *                                                                               *
+ ********************************************************************************/
+
+
+
+package edu.brown.cs.diadbb.bird;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+
+import org.w3c.dom.Element;
+
+import edu.brown.cs.bubbles.board.BoardLog;
+import edu.brown.cs.bubbles.board.BoardProperties;
+import edu.brown.cs.ivy.mint.MintConstants.CommandArgs;
+
+class BirdPrefetcher implements BirdConstants
+{
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Private Storage                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+private BirdFactory     bird_factory;
+private Semaphore       prefetch_permits;
+private Map<String,PrefetchStep> active_steps;
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Constructors                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+BirdPrefetcher(BirdFactory bf,int max)
+{
+   bird_factory = bf;
+   prefetch_permits = new Semaphore(Math.max(1,max));
+   active_steps = new HashMap<>();
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Prefetch methods                                                        */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Start the explanation and then the locations for a candidate that
+ *      has just become READY.  The responses go into the response cache
+ *      where the debug panel will find them.  At most a fixed number of
+ *      candidates are prefetched at once; if none is available the
+ *      prefetch is skipped rather than queued so it never delays queries
+ *      the user makes.  The queries are started in the background since
+ *      checking for stored answers reads the response store.
+ **/
+
+void candidateReady(BirdInstance inst)
+{
+   if (inst.getAutoQuery()) return;
+
+   synchronized (active_steps) {
+      if (active_steps.containsKey(inst.getId())) return;
+    }
+
+   if (!prefetch_permits.tryAcquire()) {
+      BoardLog.logD("BIRD","Skip prefetch for " + inst.getId());
+      return;
+    }
+
+   BoardProperties bp = BoardProperties.getProperties("Bird");
+   List<String> types = new LinkedList<>();
+   if (bp.getBoolean("Bird.explain.simple")) types.add("BASEEXPLAIN");
+   else types.add("EXPLAIN");
+   types.add("LOCATIONS");
+
+   PrefetchStep step = new PrefetchStep(inst,types);
+   synchronized (active_steps) {
+      active_steps.put(inst.getId(),step);
+    }
+   CompletableFuture.runAsync(step);
+}
+
+
+/**
+ *      Stop prefetching for a candidate that has gone away or whose panel
+ *      was closed.  The outstanding query is cancelled and anything
+ *      waiting to share its response gets null.
+ **/
+
+void cancel(String id)
+{
+   PrefetchStep step = null;
+   synchronized (active_steps) {
+      step = active_steps.get(id);
+    }
+   if (step != null) step.cancel();
+}
+
+
+
+private final class PrefetchStep implements Runnable {
+
+   private BirdInstance for_instance;
+   private List<String> query_types;
+   private PrefetchRequest current_request;
+   private boolean is_cancelled;
+   private boolean is_finished;
+
+   PrefetchStep(BirdInstance inst,List<String> types) {
+      for_instance = inst;
+      query_types = types;
+      current_request = null;
+      is_cancelled = false;
+      is_finished = false;
+    }
+
+   @Override public void run() {
+      next();
+    }
+
+   void next() {
+      BirdResponseCache cache = bird_factory.getResponseCache();
+      for ( ; ; ) {
+         String typ = null;
+         synchronized (this) {
+            if (is_cancelled || query_types.isEmpty()) break;
+            typ = query_types.remove(0);
+          }
+         if (cache.isKnown(for_instance,typ,null)) continue;
+         BoardLog.logD("BIRD","Prefetch " + typ + " for " + for_instance.getId());
+         CommandArgs args = new CommandArgs("DEBUGID",for_instance.getId(),
+               "TYPE",typ);
+         PrefetchRequest req = new PrefetchRequest(this);
+         synchronized (this) {
+            if (is_cancelled) break;
+            current_request = req;
+          }
+         // a cancel from here on is handled by the request itself
+         ResponseHandler hdlr = cache.getPrefetchHandler(for_instance,typ,null,req);
+         if (!req.setHandler(hdlr)) return;
+         String rid = bird_factory.issueCommand("ASKLIMBA",args,null,null,hdlr);
+         req.setRequestId(rid);
+         return;
+       }
+      finish();
+    }
+
+   void requestDone(PrefetchRequest req,Element xml) {
+      synchronized (this) {
+         if (req != current_request || is_cancelled) return;
+         current_request = null;
+         if (xml == null) query_types.clear();
+       }
+      // not on the reply thread, since the next query may read the store
+      CompletableFuture.runAsync(this);
+    }
+
+   void cancel() {
+      PrefetchRequest req = null;
+      synchronized (this) {
+         if (is_cancelled || is_finished) return;
+         is_cancelled = true;
+         req = current_request;
+         current_request = null;
+       }
+      BoardLog.logD("BIRD","Cancel prefetch for " + for_instance.getId());
+      if (req != null) req.cancel();
+      finish();
+    }
+
+   private void finish() {
+      synchronized (this) {
+         if (is_finished) return;
+         is_finished = true;
+       }
+      synchronized (active_steps) {
+         active_steps.remove(for_instance.getId(),this);
+       }
+      prefetch_permits.release();
+    }
+
+}       // end of inner class PrefetchStep
+
+
+
+/**
+ *      One query of a prefetch.  Its id is only known once issueCommand
+ *      returns, by which time it might already have been answered.
+ **/
+
+private final class PrefetchRequest implements ResponseHandler {
+
+   private PrefetchStep for_step;
+   private ResponseHandler cache_handler;
+   private String request_id;
+   private boolean is_answered;
+   private boolean is_cancelled;
+
+   PrefetchRequest(PrefetchStep step) {
+      for_step = step;
+      cache_handler = null;
+      request_id = null;
+      is_answered = false;
+      is_cancelled = false;
+    }
+
+   /**
+    *      Note the caching handler.  Returns false if the request was
+    *      cancelled already and so should not be issued.
+    **/
+
+   boolean setHandler(ResponseHandler hdlr) {
+      synchronized (this) {
+         cache_handler = hdlr;
+         if (!is_cancelled) return true;
+       }
+      bird_factory.getResponseCache().cancelPrefetch(hdlr);
+      return false;
+    }
+
+   void setRequestId(String rid) {
+      synchronized (this) {
+         if (is_answered || rid == null) return;
+         request_id = rid;
+         if (!is_cancelled) return;
+       }
+      bird_factory.cancelCommand(rid);
+    }
+
+   void cancel() {
+      String rid = null;
+      ResponseHandler hdlr = null;
+      synchronized (this) {
+         if (is_answered || is_cancelled) return;
+         is_cancelled = true;
+         rid = request_id;
+         hdlr = cache_handler;
+       }
+      if (rid != null) bird_factory.cancelCommand(rid);
+      // a cancelled request is never answered, so release what waits on it
+      if (hdlr != null) bird_factory.getResponseCache().cancelPrefetch(hdlr);
+    }
+
+   @Override public void handleResponse(Element xml) {
+      synchronized (this) {
+         if (is_answered || is_cancelled) return;
+         is_answered = true;
+       }
+      for_step.requestDone(this,xml);
+    }
+
+}       // end of inner class PrefetchRequest
+
+
+}       // end of class BirdPrefetcher
+
+
+
+
+/* end of BirdPrefetcher.java */
@@ -0,0 +1,334 @@
+/********************************************************************************/
+/*                                                                              */
+/*              BirdReplyRegistry.java                                          */
+/*                                                                              */
+/*      Correlation of deferred DIAD replies with their response handlers       */
+/*                                                                              */
+/********************************************************************************/
+/*      Copyright 2025 Brown University -- Steven P. Reiss                    */
+/*********************************************************************************
+ *  Copyright 2025, Brown University, Providence, RI.                            *
+ *                                                                               *
+ *                        All Rights Reserved                                    *
+ *                                                                               *
+ * This program and the accompanying materials are made available under the      *
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution, *
+ * and is available at                                                           *
+ *      http://www.eclipse.org/legal/epl-v10.html                                *
+ *                                                                               *
+ ********************************************************************************/
+
+
+
+package edu.brown.cs.diadbb.bird;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.brown.cs.bubbles.board.BoardLog;
+
+class BirdReplyRegistry implements BirdConstants
+{
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Private Storage                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+private Map<String,PendingReply> pending_map;
+private AtomicLong      id_counter;
+private Queue<PendingReply> [] wheel_slots;
+private BirdDeadlines   reply_deadlines;
+private WheelTicker     wheel_ticker;
+
+private static final int WHEEL_SIZE = 64;
+private static final long TICK_TIME = 1000;
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Constructors                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+@SuppressWarnings("unchecked")
+BirdReplyRegistry(BirdDeadlines dl)
+{
+   pending_map = new ConcurrentHashMap<>();
+   id_counter = new AtomicLong(0);
+   reply_deadlines = dl;
+   wheel_slots = new Queue[WHEEL_SIZE];
+   for (int i = 0; i < WHEEL_SIZE; ++i) {
+      wheel_slots[i] = new ConcurrentLinkedQueue<>();
+    }
+   wheel_ticker = null;
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Registration methods                                                    */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Register a handler for a deferred reply and return the request id
+ *      to send with the command.  If no reply arrives before the deadline
+ *      the handler is called with null and the entry is dropped.
+ **/
+
+String register(String cmd,ResponseHandler hdlr)
+{
+   String rid = registerQueued(cmd,hdlr);
+   startTimer(rid);
+
+   return rid;
+}
+
+
+/**
+ *      Register a handler for a command that is queued rather than sent
+ *      right away.  Its deadline only starts with startTimer(), so time
+ *      spent in the queue neither times it out nor counts as latency.
+ **/
+
+String registerQueued(String cmd,ResponseHandler hdlr)
+{
+   String rid = "DIAD_" + id_counter.incrementAndGet();
+   PendingReply pr = new PendingReply(rid,cmd,hdlr);
+   pending_map.put(rid,pr);
+
+   return rid;
+}
+
+
+/**
+ *      Start the deadline of a request as it is sent.
+ **/
+
+void startTimer(String rid)
+{
+   PendingReply pr = pending_map.get(rid);
+   if (pr == null) return;
+
+   long now = System.currentTimeMillis();
+   pr.setTimes(now,now + reply_deadlines.getReplyTimeout(pr.getCommand()));
+   addToWheel(pr);
+   startTicker();
+}
+
+
+/**
+ *      Remove the handler for a request whose reply has arrived, noting
+ *      how long the reply took for the command's adaptive deadline.
+ **/
+
+ResponseHandler complete(String rid)
+{
+   if (rid == null) return null;
+   PendingReply pr = pending_map.remove(rid);
+   if (pr == null) return null;
+
+   // a reply can't come for a request that was never sent
+   if (pr.getStartTime() > 0) {
+      long delta = System.currentTimeMillis() - pr.getStartTime();
+      reply_deadlines.noteReplyLatency(pr.getCommand(),delta);
+    }
+
+   return pr.getHandler();
+}
+
+
+/**
+ *      Remove the handler for a request id.  This returns null if the
+ *      request has already been answered or has expired, so the handler
+ *      is only ever given one response.
+ **/
+
+ResponseHandler remove(String rid)
+{
+   if (rid == null) return null;
+   PendingReply pr = pending_map.remove(rid);
+   if (pr == null) return null;
+
+   return pr.getHandler();
+}
+
+
+/**
+ *      Return the handler for a request id without removing it.  This is
+ *      used for partial replies that precede the final one.
+ **/
+
+ResponseHandler get(String rid)
+{
+   if (rid == null) return null;
+   PendingReply pr = pending_map.get(rid);
+   if (pr == null) return null;
+
+   return pr.getHandler();
+}
+
+
+/**
+ *      Give null to the handlers of all pending requests for the given
+ *      commands (or all pending requests if cmds is null), e.g. because
+ *      the server that would answer them is down.  Returns the number of
+ *      requests failed.
+ **/
+
+int failPending(Set<String> cmds)
+{
+   int ct = 0;
+   for (PendingReply pr : new ArrayList<>(pending_map.values())) {
+      if (cmds != null && !cmds.contains(pr.getCommand())) continue;
+      if (!pending_map.remove(pr.getRequestId(),pr)) continue;
+      ++ct;
+      try {
+         pr.getHandler().handleResponse(null);
+       }
+      catch (Throwable t) {
+         BoardLog.logE("BIRD","Problem handling failed reply",t);
+       }
+    }
+
+   return ct;
+}
+
+
+int getPendingCount()
+{
+   return pending_map.size();
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Timer wheel methods                                                     */
+/*                                                                              */
+/********************************************************************************/
+
+private void addToWheel(PendingReply pr)
+{
+   int slot = (int) ((pr.getDeadline() / TICK_TIME) % WHEEL_SIZE);
+   wheel_slots[slot].add(pr);
+}
+
+
+private synchronized void startTicker()
+{
+   if (wheel_ticker != null) return;
+   wheel_ticker = new WheelTicker();
+   wheel_ticker.start();
+}
+
+
+private void processSlot(long tick)
+{
+   int slot = (int) (tick % WHEEL_SIZE);
+   Queue<PendingReply> q = wheel_slots[slot];
+   int ct = q.size();
+   for (int i = 0; i < ct; ++i) {
+      PendingReply pr = q.poll();
+      if (pr == null) break;
+      if (pending_map.get(pr.getRequestId()) != pr) continue;
+      if (pr.getDeadline() / TICK_TIME > tick) {
+         // not due on this revolution of the wheel
+         q.add(pr);
+         continue;
+       }
+      if (!pending_map.remove(pr.getRequestId(),pr)) continue;
+      BoardLog.logD("BIRD","Reply for " + pr.getRequestId() + " (" + pr.getCommand() +
+            ") expired");
+      // record the deadline as a (censored) sample so the estimate catches up
+      reply_deadlines.noteReplyLatency(pr.getCommand(),pr.getDeadline() - pr.getStartTime());
+      try {
+         pr.getHandler().handleResponse(null);
+       }
+      catch (Throwable t) {
+         BoardLog.logE("BIRD","Problem handling expired reply",t);
+       }
+    }
+}
+
+
+
+private final class WheelTicker extends Thread {
+
+   WheelTicker() {
+      super("BirdReplyExpiration");
+      setDaemon(true);
+    }
+
+   @Override public void run() {
+      long last = System.currentTimeMillis() / TICK_TIME;
+      for ( ; ; ) {
+         try {
+            Thread.sleep(TICK_TIME);
+          }
+         catch (InterruptedException e) { }
+         long tick = System.currentTimeMillis() / TICK_TIME;
+         // catch up on any ticks missed while sleeping
+         for (long t = Math.max(last + 1,tick - WHEEL_SIZE + 1); t <= tick; ++t) {
+            processSlot(t);
+          }
+         last = tick;
+       }
+    }
+
+}       // end of inner class WheelTicker
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Pending reply information                                               */
+/*                                                                              */
+/********************************************************************************/
+
+private static final class PendingReply {
+
+   private String request_id;
+   private String command_name;
+   private ResponseHandler response_handler;
+   private volatile long start_time;
+   private volatile long reply_deadline;
+
+   PendingReply(String rid,String cmd,ResponseHandler hdlr) {
+      request_id = rid;
+      command_name = cmd;
+      response_handler = hdlr;
+      start_time = 0;
+      reply_deadline = 0;
+    }
+
+   void setTimes(long start,long deadline) {
+      reply_deadline = deadline;
+      start_time = start;
+    }
+
+   String getRequestId()                        { return request_id; }
+   String getCommand()                          { return command_name; }
+   long getStartTime()                          { return start_time; }
+   ResponseHandler getHandler()                 { return response_handler; }
+   long getDeadline()                           { return reply_deadline; }
+
+}       // end of inner class PendingReply
+
+
+}       // end of class BirdReplyRegistry
+
+
+
+
+/* end of BirdReplyRegistry.java */
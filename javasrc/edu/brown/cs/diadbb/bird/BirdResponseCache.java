@@ -0,0 +1,606 @@
+/********************************************************************************/
+/*                                                                              */
+/*              BirdResponseCache.java                                          */
+/*                                                                              */
+/*      LRU cache of LIMBA responses backed by the workspace store              */
+/*                                                                              */
+/********************************************************************************/
+/*      Copyright 2025 Brown University -- Steven P. Reiss                    */
+/*********************************************************************************
+ *  Copyright 2025, Brown University, Providence, RI.                            *
+ *                                                                               *
+ *                        All Rights Reserved                                    *
+ *                                                                               *
+ * This program and the accompanying materials are made available under the      *
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution, *
+ * and is available at                                                           *
+ *      http://www.eclipse.org/legal/epl-v10.html                                *
+ *                                                                               *
+ ********************************************************************************/
+
+
+
+package edu.brown.cs.diadbb.bird;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+
+import javax.swing.SwingUtilities;
+
+import org.w3c.dom.Element;
+
+import edu.brown.cs.bubbles.board.BoardLog;
+import edu.brown.cs.ivy.xml.IvyXml;
+
+class BirdResponseCache implements BirdConstants
+{
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Private Storage                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+private LinkedHashMap<String,CacheEntry> cache_map;
+private int             max_entries;
+private long            max_size;
+private long            total_size;
+private long            hit_count;
+private long            miss_count;
+private long            store_count;
+private BirdResponseStore response_store;
+private Map<String,List<ResponseHandler>> waiting_map;
+
+private static final Set<String> CACHED_TYPES;
+private static final Set<String> VALIDATED_TYPES;
+
+static {
+   CACHED_TYPES = new TreeSet<>();
+   CACHED_TYPES.add("EXPLAIN");
+   CACHED_TYPES.add("BASEEXPLAIN");
+   CACHED_TYPES.add("LOCATIONS");
+
+   // repairs are only cached once the client has accepted their patches
+   VALIDATED_TYPES = new TreeSet<>();
+   VALIDATED_TYPES.add("REPAIRS");
+   VALIDATED_TYPES.add("BASEREPAIRS");
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Constructors                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+BirdResponseCache(int entries,long size)
+{
+   // access order so iteration starts with the least recently used entry
+   cache_map = new LinkedHashMap<>(16,0.75f,true);
+   max_entries = entries;
+   max_size = size;
+   total_size = 0;
+   hit_count = 0;
+   miss_count = 0;
+   store_count = 0;
+   response_store = null;
+   waiting_map = new HashMap<>();
+}
+
+
+void setStore(BirdResponseStore store)
+{
+   response_store = store;
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Access methods                                                          */
+/*                                                                              */
+/********************************************************************************/
+
+synchronized long getHitCount()                 { return hit_count; }
+
+synchronized long getMissCount()                { return miss_count; }
+
+synchronized long getStoreHitCount()            { return store_count; }
+
+synchronized int getEntryCount()                { return cache_map.size(); }
+
+synchronized long getTotalSize()                { return total_size; }
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Lookup methods                                                          */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Return the cache key for a query or null if the query should not
+ *      be cached.  Conversational queries (USER, RETRY) depend on the
+ *      history and are never cached.
+ **/
+
+private String getKey(BirdInstance inst,String type,String question)
+{
+   if (inst == null || max_entries <= 0) return null;
+   if (!isCachedType(type)) return null;
+
+   return buildKey(inst.getId(),type,inst.getFingerprint(),question);
+}
+
+
+/**
+ *      Return the key for the persistent store.  This does not include
+ *      the candidate id, which changes from session to session.
+ **/
+
+private String getStoreKey(BirdInstance inst,String type,String question)
+{
+   if (inst == null || response_store == null) return null;
+   if (!isCachedType(type)) return null;
+
+   return buildKey("*",type,inst.getStoreFingerprint(),question);
+}
+
+
+private static boolean isCachedType(String type)
+{
+   return CACHED_TYPES.contains(type) || VALIDATED_TYPES.contains(type);
+}
+
+
+private static String buildKey(String id,String type,String fp,String question)
+{
+   StringBuffer buf = new StringBuffer();
+   buf.append(id);
+   buf.append("|");
+   buf.append(type);
+   buf.append("|");
+   buf.append(fp);
+   buf.append("|");
+   if (question != null) buf.append(question);
+
+   return buf.toString();
+}
+
+
+/**
+ *      If the response to a query is cached in memory, hand it to the
+ *      handler (asynchronously, as a real reply would be) and return true.
+ *      This does no I/O and so can be called from the Swing thread.
+ **/
+
+boolean lookup(BirdInstance inst,String type,String question,ResponseHandler hdlr)
+{
+   String key = getKey(inst,type,question);
+   if (key == null) return false;
+
+   Element rslt = null;
+   synchronized (this) {
+      CacheEntry ce = cache_map.get(key);
+      if (ce != null) {
+         ++hit_count;
+         rslt = ce.getResult();
+       }
+      else if (waiting_map.containsKey(key)) {
+         // a prefetch of this query is in progress; share its response
+         ++hit_count;
+         waiting_map.get(key).add(hdlr);
+         BoardLog.logD("BIRD","Wait for prefetched response for " + key);
+         return true;
+       }
+      else {
+         // with a store, the miss is counted once the store has been checked
+         if (response_store == null) ++miss_count;
+         return false;
+       }
+    }
+
+   BoardLog.logD("BIRD","Use cached response for " + key + " (" + getHitCount() +
+         " hits, " + getStoreHitCount() + " stored, " + getMissCount() + " misses)");
+   CompletableFuture.runAsync(new CachedReply(hdlr,rslt));
+
+   return true;
+}
+
+
+/**
+ *      Look for the response to a query in the workspace store.  This is
+ *      done in the background since it reads the store and the source
+ *      file.  A stored response is passed to the handler on the Swing
+ *      thread; otherwise miss is run on the Swing thread.  Returns false,
+ *      without doing anything, if there is no store to check.
+ **/
+
+boolean lookupStore(BirdInstance inst,String type,String question,ResponseHandler hdlr,
+      Runnable miss)
+{
+   if (response_store == null) return false;
+   String key = getKey(inst,type,question);
+   if (key == null) return false;
+
+   CompletableFuture.runAsync(new StoreLookup(key,inst,type,question,hdlr,miss));
+
+   return true;
+}
+
+
+/**
+ *      Return a handler that records a successful response to the query
+ *      before passing it on.
+ **/
+
+ResponseHandler getCachingHandler(BirdInstance inst,String type,String question,
+      ResponseHandler hdlr)
+{
+   if (!CACHED_TYPES.contains(type)) return hdlr;
+   String key = getKey(inst,type,question);
+   if (key == null) return hdlr;
+
+   return new CachingHandler(key,inst,type,question,hdlr);
+}
+
+
+
+/**
+ *      Check if the response to a query is available or already being
+ *      computed.  A response found in the store is brought into memory.
+ *      This reads the store, so it should not be called on the Swing
+ *      thread.
+ **/
+
+boolean isKnown(BirdInstance inst,String type,String question)
+{
+   String key = getKey(inst,type,question);
+   if (key == null) return false;
+
+   synchronized (this) {
+      if (cache_map.containsKey(key) || waiting_map.containsKey(key)) return true;
+    }
+   if (response_store == null) return false;
+
+   Element rslt = null;
+   try {
+      String skey = getStoreKey(inst,type,question);
+      if (skey != null) rslt = response_store.lookup(skey);
+    }
+   catch (Throwable t) {
+      BoardLog.logE("BIRD","Problem reading response store",t);
+    }
+   if (rslt == null) return false;
+
+   synchronized (this) {
+      ++store_count;
+    }
+   put(key,rslt);
+
+   return true;
+}
+
+
+/**
+ *      Return a handler for a background query.  Requests for the same
+ *      query made before it completes wait for its response rather than
+ *      asking LIMBA again.
+ **/
+
+ResponseHandler getPrefetchHandler(BirdInstance inst,String type,String question,
+      ResponseHandler hdlr)
+{
+   if (!CACHED_TYPES.contains(type)) return hdlr;
+   String key = getKey(inst,type,question);
+   if (key == null) return hdlr;
+
+   synchronized (this) {
+      if (!waiting_map.containsKey(key)) {
+         waiting_map.put(key,new ArrayList<>());
+       }
+    }
+
+   return new CachingHandler(key,inst,type,question,hdlr);
+}
+
+
+
+/**
+ *      Called when a background query made with a handler from
+ *      getPrefetchHandler is cancelled.  Requests that were waiting to
+ *      share its response get null, since it will never come.
+ **/
+
+void cancelPrefetch(ResponseHandler hdlr)
+{
+   if (!(hdlr instanceof CachingHandler)) return;
+   CachingHandler ch = (CachingHandler) hdlr;
+
+   List<ResponseHandler> waits = null;
+   synchronized (this) {
+      waits = waiting_map.remove(ch.getKey());
+    }
+   if (waits == null) return;
+
+   for (ResponseHandler rh : waits) {
+      rh.handleResponse(null);
+    }
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Update methods                                                          */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Record the response to a query whose answer has to be checked by
+ *      the client before it is reused, once it has been.  The question is
+ *      the one originally asked; follow-up questions to fix a bad answer
+ *      are never cached.
+ **/
+
+void putValidated(BirdInstance inst,String type,String question,Element rslt)
+{
+   if (!VALIDATED_TYPES.contains(type)) return;
+   String key = getKey(inst,type,question);
+   if (key == null) return;
+
+   put(key,rslt);
+   if (response_store != null && getResponseText(rslt) != null) {
+      CompletableFuture.runAsync(new StoreWriter(inst,type,question,rslt));
+    }
+}
+
+
+synchronized void put(String key,Element rslt)
+{
+   if (key == null) return;
+
+   String txt = getResponseText(rslt);
+   if (txt == null) return;
+
+   long sz = key.length() + txt.length();
+   if (sz > max_size) return;
+
+   CacheEntry old = cache_map.put(key,new CacheEntry(rslt,sz));
+   if (old != null) total_size -= old.getSize();
+   total_size += sz;
+
+   Iterator<CacheEntry> it = cache_map.values().iterator();
+   while (it.hasNext() && (cache_map.size() > max_entries || total_size > max_size)) {
+      CacheEntry ce = it.next();
+      it.remove();
+      total_size -= ce.getSize();
+    }
+}
+
+
+private static String getResponseText(Element rslt)
+{
+   if (rslt == null) return null;
+
+   String txt = IvyXml.getTextElement(rslt,"RESPONSE");
+   if (txt == null) txt = IvyXml.getText(rslt);
+   if (txt == null || txt.isEmpty()) return null;
+
+   return txt;
+}
+
+
+/**
+ *      Drop all cached responses for a candidate.
+ **/
+
+synchronized void invalidate(String id)
+{
+   if (id == null) return;
+
+   String pfx = id + "|";
+   // waiting requests still get their response; it just is not reused
+   Iterator<Map.Entry<String,CacheEntry>> it = cache_map.entrySet().iterator();
+   while (it.hasNext()) {
+      Map.Entry<String,CacheEntry> ent = it.next();
+      if (ent.getKey().startsWith(pfx)) {
+         total_size -= ent.getValue().getSize();
+         it.remove();
+       }
+    }
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Handlers                                                                */
+/*                                                                              */
+/********************************************************************************/
+
+private final class CachingHandler implements StreamHandler {
+
+   private String cache_key;
+   private BirdInstance for_instance;
+   private String query_type;
+   private String query_text;
+   private ResponseHandler response_handler;
+
+   CachingHandler(String key,BirdInstance inst,String type,String question,
+         ResponseHandler hdlr) {
+      cache_key = key;
+      for_instance = inst;
+      query_type = type;
+      query_text = question;
+      response_handler = hdlr;
+    }
+
+   String getKey()                              { return cache_key; }
+
+   @Override public void handlePartial(String text) {
+      if (response_handler instanceof StreamHandler) {
+         StreamHandler shdlr = (StreamHandler) response_handler;
+         shdlr.handlePartial(text);
+       }
+    }
+
+   @Override public void handleResponse(Element xml) {
+      put(cache_key,xml);
+      List<ResponseHandler> waits = null;
+      synchronized (BirdResponseCache.this) {
+         waits = waiting_map.remove(cache_key);
+       }
+      response_handler.handleResponse(xml);
+      if (waits != null) {
+         for (ResponseHandler rh : waits) {
+            rh.handleResponse(xml);
+          }
+       }
+      // saving hashes the source file and writes the store, so the user doesn't wait
+      if (response_store != null && getResponseText(xml) != null) {
+         CompletableFuture.runAsync(new StoreWriter(for_instance,query_type,query_text,xml));
+       }
+    }
+
+}       // end of inner class CachingHandler
+
+
+
+private final class StoreWriter implements Runnable {
+
+   private BirdInstance for_instance;
+   private String query_type;
+   private String query_text;
+   private Element result_xml;
+
+   StoreWriter(BirdInstance inst,String type,String question,Element xml) {
+      for_instance = inst;
+      query_type = type;
+      query_text = question;
+      result_xml = xml;
+    }
+
+   @Override public void run() {
+      try {
+         String skey = getStoreKey(for_instance,query_type,query_text);
+         if (skey != null) response_store.store(skey,result_xml);
+       }
+      catch (Throwable t) {
+         BoardLog.logE("BIRD","Problem writing response store",t);
+       }
+    }
+
+}       // end of inner class StoreWriter
+
+
+
+private final class StoreLookup implements Runnable {
+
+   private String cache_key;
+   private BirdInstance for_instance;
+   private String query_type;
+   private String query_text;
+   private ResponseHandler response_handler;
+   private Runnable miss_action;
+
+   StoreLookup(String key,BirdInstance inst,String type,String question,
+         ResponseHandler hdlr,Runnable miss) {
+      cache_key = key;
+      for_instance = inst;
+      query_type = type;
+      query_text = question;
+      response_handler = hdlr;
+      miss_action = miss;
+    }
+
+   @Override public void run() {
+      Element rslt = null;
+      try {
+         String skey = getStoreKey(for_instance,query_type,query_text);
+         if (skey != null) rslt = response_store.lookup(skey);
+       }
+      catch (Throwable t) {
+         BoardLog.logE("BIRD","Problem reading response store",t);
+       }
+
+      synchronized (BirdResponseCache.this) {
+         if (rslt == null) ++miss_count;
+         else ++store_count;
+       }
+
+      if (rslt == null) {
+         SwingUtilities.invokeLater(miss_action);
+         return;
+       }
+
+      put(cache_key,rslt);
+      BoardLog.logD("BIRD","Use stored response for " + cache_key);
+      SwingUtilities.invokeLater(new CachedReply(response_handler,rslt));
+    }
+
+}       // end of inner class StoreLookup
+
+
+
+private static final class CachedReply implements Runnable {
+
+   private ResponseHandler response_handler;
+   private Element reply_xml;
+
+   CachedReply(ResponseHandler hdlr,Element xml) {
+      response_handler = hdlr;
+      reply_xml = xml;
+    }
+
+   @Override public void run() {
+      try {
+         response_handler.handleResponse(reply_xml);
+       }
+      catch (Throwable t) {
+         BoardLog.logE("BIRD","Problem handling cached response",t);
+       }
+    }
+
+}       // end of inner class CachedReply
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Cache entry                                                             */
+/*                                                                              */
+/********************************************************************************/
+
+private static final class CacheEntry {
+
+   private Element result_xml;
+   private long entry_size;
+
+   CacheEntry(Element xml,long sz) {
+      result_xml = xml;
+      entry_size = sz;
+    }
+
+   Element getResult()                          { return result_xml; }
+   long getSize()                               { return entry_size; }
+
+}       // end of inner class CacheEntry
+
+
+}       // end of class BirdResponseCache
+
+
+
+
+/* end of BirdResponseCache.java */
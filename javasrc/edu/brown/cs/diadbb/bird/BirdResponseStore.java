@@ -0,0 +1,437 @@
+/********************************************************************************/
+/*                                                                              */
+/*              BirdResponseStore.java                                          */
+/*                                                                              */
+/*      Workspace store of LIMBA responses that persists across sessions        */
+/*                                                                              */
+/********************************************************************************/
+/*      Copyright 2025 Brown University -- Steven P. Reiss                    */
+/*********************************************************************************
+ *  Copyright 2025, Brown University, Providence, RI.                            *
+ *                                                                               *
+ *                        All Rights Reserved                                    *
+ *                                                                               *
+ * This program and the accompanying materials are made available under the      *
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution, *
+ * and is available at                                                           *
+ *      http://www.eclipse.org/legal/epl-v10.html                                *
+ *                                                                               *
+ ********************************************************************************/
+
+
+
+package edu.brown.cs.diadbb.bird;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.w3c.dom.Element;
+
+import edu.brown.cs.bubbles.board.BoardLog;
+import edu.brown.cs.ivy.xml.IvyXml;
+
+/**
+ *      The store is an append-only data file of (key,response) records and
+ *      a memory-mapped open-addressing index from key hash to record offset.
+ *      Replaced records are left in the data file until the next compaction.
+ **/
+
+class BirdResponseStore implements BirdConstants
+{
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Private Storage                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+private File            data_file;
+private File            index_file;
+private RandomAccessFile data_access;
+private MappedByteBuffer index_buffer;
+private int             num_slots;
+private int             used_slots;
+private long            data_length;
+private long            max_size;
+
+private static final int INDEX_MAGIC = 0x42495244;              // BIRD
+private static final int HEADER_SIZE = 16;
+private static final int SLOT_SIZE = 24;
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Constructors                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+BirdResponseStore(File dir,int slots,long size) throws IOException
+{
+   data_file = new File(dir,"bird.data");
+   index_file = new File(dir,"bird.index");
+   num_slots = Math.max(64,slots);
+   max_size = size;
+
+   data_access = new RandomAccessFile(data_file,"rw");
+   try (RandomAccessFile ir = new RandomAccessFile(index_file,"rw")) {
+      long isz = HEADER_SIZE + ((long) num_slots) * SLOT_SIZE;
+      ir.setLength(isz);
+      index_buffer = ir.getChannel().map(FileChannel.MapMode.READ_WRITE,0,isz);
+    }
+
+   if (index_buffer.getInt(0) != INDEX_MAGIC || index_buffer.getInt(4) != num_slots) {
+      rebuildIndex();
+    }
+   else {
+      data_length = index_buffer.getLong(8);
+      // drop anything written after the index was last updated
+      if (data_access.length() != data_length) data_access.setLength(data_length);
+      used_slots = 0;
+      for (int i = 0; i < num_slots; ++i) {
+         if (getSlotHash(i) != 0) ++used_slots;
+       }
+    }
+
+   BoardLog.logD("BIRD","Response store has " + used_slots + " entries in " +
+         data_length + " bytes");
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Access methods                                                          */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Return the stored response for a key or null.
+ **/
+
+synchronized Element lookup(String key)
+{
+   if (key == null) return null;
+
+   long h = hashKey(key);
+   int slot = findSlot(h);
+   if (getSlotHash(slot) == 0) return null;
+
+   try {
+      StoreRecord rec = readRecord(getSlotOffset(slot));
+      if (rec == null || !key.equals(rec.getKey())) return null;
+      return IvyXml.convertStringToXml(rec.getData());
+    }
+   catch (IOException e) {
+      BoardLog.logE("BIRD","Problem reading response store",e);
+    }
+
+   return null;
+}
+
+
+/**
+ *      Add or replace the response for a key.
+ **/
+
+synchronized void store(String key,Element rslt)
+{
+   if (key == null || rslt == null) return;
+
+   String data = IvyXml.convertXmlToString(rslt);
+   try {
+      long h = hashKey(key);
+      int slot = findSlot(h);
+      boolean isnew = (getSlotHash(slot) == 0);
+      long off = appendRecord(key,data);
+      setSlot(slot,h,off);
+      if (isnew) ++used_slots;
+      setHeader();
+
+      if (used_slots > num_slots * 3 / 4 || data_length > max_size) {
+         compact();
+       }
+    }
+   catch (IOException e) {
+      BoardLog.logE("BIRD","Problem writing response store",e);
+    }
+}
+
+
+synchronized int getEntryCount()                { return used_slots; }
+
+synchronized long getDataSize()                 { return data_length; }
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Compaction methods                                                      */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Rewrite the data file with only the live records, keeping the most
+ *      recently written ones when over half the size or slot limits.
+ **/
+
+private void compact() throws IOException
+{
+   List<SlotInfo> live = new ArrayList<>();
+   for (int i = 0; i < num_slots; ++i) {
+      long h = getSlotHash(i);
+      if (h != 0) live.add(new SlotInfo(h,getSlotOffset(i)));
+    }
+   Collections.sort(live,new NewestFirst());
+
+   File tmp = new File(data_file.getPath() + ".tmp");
+   List<SlotInfo> kept = new ArrayList<>();
+   long len = 0;
+   try (RandomAccessFile out = new RandomAccessFile(tmp,"rw")) {
+      out.setLength(0);
+      for (SlotInfo si : live) {
+         if (len > max_size / 2 || kept.size() >= num_slots / 2) break;
+         StoreRecord rec = readRecord(si.getOffset());
+         if (rec == null) continue;
+         byte [] bytes = rec.getBytes();
+         out.write(bytes);
+         kept.add(new SlotInfo(si.getHash(),len));
+         len += bytes.length;
+       }
+    }
+
+   data_access.close();
+   if (!tmp.renameTo(data_file)) {
+      data_file.delete();
+      if (!tmp.renameTo(data_file)) throw new IOException("Can't replace " + data_file);
+    }
+   data_access = new RandomAccessFile(data_file,"rw");
+
+   clearIndex();
+   for (SlotInfo si : kept) {
+      setSlot(findSlot(si.getHash()),si.getHash(),si.getOffset());
+    }
+   used_slots = kept.size();
+   data_length = len;
+   setHeader();
+
+   BoardLog.logD("BIRD","Compacted response store from " + live.size() + " to " +
+         kept.size() + " entries");
+}
+
+
+/**
+ *      Rebuild the index by scanning the data file; later records for a key
+ *      replace earlier ones.
+ **/
+
+private void rebuildIndex() throws IOException
+{
+   clearIndex();
+   used_slots = 0;
+   data_length = 0;
+
+   long len = data_access.length();
+   long off = 0;
+   while (off < len) {
+      StoreRecord rec = readRecord(off);
+      if (rec == null) break;
+      long h = hashKey(rec.getKey());
+      int slot = findSlot(h);
+      if (getSlotHash(slot) == 0) {
+         if (used_slots >= num_slots - 1) break;
+         ++used_slots;
+       }
+      setSlot(slot,h,off);
+      off += rec.getBytes().length;
+    }
+
+   data_length = off;
+   if (len != off) data_access.setLength(off);
+   setHeader();
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Index methods                                                           */
+/*                                                                              */
+/********************************************************************************/
+
+private int findSlot(long h)
+{
+   int slot = (int) ((h & Long.MAX_VALUE) % num_slots);
+   for ( ; ; ) {
+      long sh = getSlotHash(slot);
+      if (sh == 0 || sh == h) return slot;
+      slot = (slot + 1) % num_slots;
+    }
+}
+
+
+private long getSlotHash(int slot)
+{
+   return index_buffer.getLong(HEADER_SIZE + slot * SLOT_SIZE);
+}
+
+
+private long getSlotOffset(int slot)
+{
+   return index_buffer.getLong(HEADER_SIZE + slot * SLOT_SIZE + 8);
+}
+
+
+private void setSlot(int slot,long h,long off)
+{
+   int pos = HEADER_SIZE + slot * SLOT_SIZE;
+   index_buffer.putLong(pos + 8,off);
+   index_buffer.putLong(pos,h);
+}
+
+
+private void setHeader()
+{
+   index_buffer.putInt(0,INDEX_MAGIC);
+   index_buffer.putInt(4,num_slots);
+   index_buffer.putLong(8,data_length);
+}
+
+
+private void clearIndex()
+{
+   for (int i = 0; i < HEADER_SIZE + num_slots * SLOT_SIZE; i += 8) {
+      index_buffer.putLong(i,0);
+    }
+}
+
+
+private static long hashKey(String key)
+{
+   byte [] bytes = key.getBytes(StandardCharsets.UTF_8);
+   CRC32 crc = new CRC32();
+   crc.update(bytes);
+   long h = (crc.getValue() << 32) ^ (key.hashCode() & 0xffffffffL);
+   if (h == 0) h = 1;
+
+   return h;
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Data file methods                                                       */
+/*                                                                              */
+/********************************************************************************/
+
+private long appendRecord(String key,String data) throws IOException
+{
+   StoreRecord rec = new StoreRecord(key,data);
+   byte [] bytes = rec.getBytes();
+   long off = data_length;
+   data_access.seek(off);
+   data_access.write(bytes);
+   data_length += bytes.length;
+
+   return off;
+}
+
+
+private StoreRecord readRecord(long off) throws IOException
+{
+   if (off + 8 > data_access.length()) return null;
+
+   data_access.seek(off);
+   int klen = data_access.readInt();
+   int dlen = data_access.readInt();
+   if (klen < 0 || dlen < 0 || off + 8 + klen + dlen > data_access.length()) return null;
+
+   byte [] kb = new byte[klen];
+   data_access.readFully(kb);
+   byte [] db = new byte[dlen];
+   data_access.readFully(db);
+
+   return new StoreRecord(new String(kb,StandardCharsets.UTF_8),
+         new String(db,StandardCharsets.UTF_8));
+}
+
+
+
+private static final class StoreRecord {
+
+   private String record_key;
+   private String record_data;
+
+   StoreRecord(String key,String data) {
+      record_key = key;
+      record_data = data;
+    }
+
+   String getKey()                              { return record_key; }
+   String getData()                             { return record_data; }
+
+   byte [] getBytes() {
+      byte [] kb = record_key.getBytes(StandardCharsets.UTF_8);
+      byte [] db = record_data.getBytes(StandardCharsets.UTF_8);
+      byte [] rslt = new byte[8 + kb.length + db.length];
+      putInt(rslt,0,kb.length);
+      putInt(rslt,4,db.length);
+      System.arraycopy(kb,0,rslt,8,kb.length);
+      System.arraycopy(db,0,rslt,8 + kb.length,db.length);
+      return rslt;
+    }
+
+   private static void putInt(byte [] buf,int off,int v) {
+      buf[off] = (byte) (v >>> 24);
+      buf[off+1] = (byte) (v >>> 16);
+      buf[off+2] = (byte) (v >>> 8);
+      buf[off+3] = (byte) v;
+    }
+
+}       // end of inner class StoreRecord
+
+
+
+private static final class SlotInfo {
+
+   private long slot_hash;
+   private long data_offset;
+
+   SlotInfo(long h,long off) {
+      slot_hash = h;
+      data_offset = off;
+    }
+
+   long getHash()                               { return slot_hash; }
+   long getOffset()                             { return data_offset; }
+
+}       // end of inner class SlotInfo
+
+
+
+private static final class NewestFirst implements Comparator<SlotInfo> {
+
+   @Override public int compare(SlotInfo s1,SlotInfo s2) {
+      return Long.compare(s2.getOffset(),s1.getOffset());
+    }
+
+}       // end of inner class NewestFirst
+
+
+}       // end of class BirdResponseStore
+
+
+
+
+/* end of BirdResponseStore.java */
@@ -0,0 +1,284 @@
+/********************************************************************************/
+/*                                                                              */
+/*              BirdServerDescriptor.java                                       */
+/*                                                                              */
+/*      Workspace record of a running DIAD or LIMBA server                      */
+/*                                                                              */
+/********************************************************************************/
+/*      Copyright 2025 Brown University -- Steven P. Reiss                    */
+/*********************************************************************************
+ *  Copyright 2025, Brown University, Providence, RI.                            *
+ *                                                                               *
+ *                        All Rights Reserved                                    *
+ *                                                                               *
+ * This program and the accompanying materials are made available under the      *
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution, *
+ * and is available at                                                           *
+ *      http://www.eclipse.org/legal/epl-v10.html                                *
+ *                                                                               *
+ ********************************************************************************/
+
+
+
+package edu.brown.cs.diadbb.bird;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import edu.brown.cs.bubbles.board.BoardLog;
+
+/**
+ *      When a server is launched its Mint name, version and process id are
+ *      written to <workspace>/.bird/<server>.desc.  A later session for the
+ *      same workspace reads this to decide whether it can attach to that
+ *      server rather than start a new one: the Mint name must be the same
+ *      (that is how we talk to it), the version must match what we would
+ *      launch, and the process must still be alive.  A live server of the
+ *      wrong version is stopped before a new one is started, so two never
+ *      answer on the same Mint name.  A lock file keeps two sessions from
+ *      launching the same server at once.
+ **/
+
+class BirdServerDescriptor implements BirdConstants
+{
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Private Storage                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+private String          server_name;
+private File            desc_file;
+private File            lock_file;
+private RandomAccessFile lock_access;
+private FileLock        file_lock;
+
+private static final String DESC_DIR = ".bird";
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Constructors                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+BirdServerDescriptor(File wsdir,String server)
+{
+   server_name = server;
+   File dir = new File(wsdir,DESC_DIR);
+   desc_file = new File(dir,server.toLowerCase() + ".desc");
+   lock_file = new File(dir,server.toLowerCase() + ".lock");
+   lock_access = null;
+   file_lock = null;
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Locking methods                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Get the launch lock, waiting for another session that holds it.
+ *      Failure to lock is logged and ignored.
+ **/
+
+void lock()
+{
+   try {
+      lock_file.getParentFile().mkdirs();
+      lock_access = new RandomAccessFile(lock_file,"rw");
+      FileChannel fc = lock_access.getChannel();
+      file_lock = fc.tryLock();
+      if (file_lock == null) {
+         BoardLog.logD("BIRD","Waiting for another session starting " + server_name);
+         file_lock = fc.lock();
+       }
+    }
+   catch (IOException e) {
+      BoardLog.logD("BIRD","Can't lock " + lock_file + ": " + e);
+      unlock();
+    }
+}
+
+
+void unlock()
+{
+   try {
+      if (file_lock != null) file_lock.release();
+      if (lock_access != null) lock_access.close();
+    }
+   catch (IOException e) { }
+
+   file_lock = null;
+   lock_access = null;
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Descriptor methods                                                      */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Return the process id of the server named by the descriptor if it is
+ *      still alive, otherwise -1.  A descriptor for a server that is gone is
+ *      removed.
+ **/
+
+long getLivePid()
+{
+   Properties p = read();
+   if (p == null) return -1;
+
+   long pid = -1;
+   try {
+      pid = Long.parseLong(p.getProperty("PID","-1"));
+    }
+   catch (NumberFormatException e) { }
+
+   if (pid <= 0 || !isAlive(pid)) {
+      BoardLog.logD("BIRD","Removing stale " + server_name + " descriptor for " + pid);
+      remove();
+      return -1;
+    }
+
+   return pid;
+}
+
+
+boolean usesMint(String mint)
+{
+   Properties p = read();
+
+   return p != null && mint.equals(p.getProperty("MINT"));
+}
+
+
+/**
+ *      Return true if the recorded server is the version we would launch.
+ **/
+
+boolean isCompatible(String version)
+{
+   Properties p = read();
+   if (p == null) return false;
+
+   if (!version.equals(p.getProperty("VERSION"))) {
+      BoardLog.logD("BIRD","Running " + server_name + " is a different version");
+      return false;
+    }
+
+   return true;
+}
+
+
+void write(String mint,String version,long pid)
+{
+   Properties p = new Properties();
+   p.setProperty("MINT",mint);
+   p.setProperty("VERSION",version);
+   p.setProperty("PID",Long.toString(pid));
+   p.setProperty("STARTED",Long.toString(System.currentTimeMillis()));
+
+   desc_file.getParentFile().mkdirs();
+   try (FileOutputStream fos = new FileOutputStream(desc_file)) {
+      p.store(fos,server_name + " server");
+    }
+   catch (IOException e) {
+      BoardLog.logD("BIRD","Can't write " + desc_file + ": " + e);
+    }
+}
+
+
+void remove()
+{
+   desc_file.delete();
+}
+
+
+private Properties read()
+{
+   if (!desc_file.exists()) return null;
+
+   Properties p = new Properties();
+   try (FileInputStream fis = new FileInputStream(desc_file)) {
+      p.load(fis);
+    }
+   catch (IOException e) {
+      return null;
+    }
+
+   return p;
+}
+
+
+private static boolean isAlive(long pid)
+{
+   Optional<ProcessHandle> ph = ProcessHandle.of(pid);
+
+   return ph.isPresent() && ph.get().isAlive();
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Process methods                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Ask a server process to exit, forcing it if it does not go within
+ *      wait milliseconds.  Returns true if the process is gone.
+ **/
+
+static boolean stopProcess(long pid,long wait)
+{
+   Optional<ProcessHandle> oph = ProcessHandle.of(pid);
+   if (!oph.isPresent()) return true;
+
+   ProcessHandle ph = oph.get();
+   ph.destroy();
+   if (waitForExit(ph,wait)) return true;
+
+   ph.destroyForcibly();
+
+   return waitForExit(ph,wait);
+}
+
+
+private static boolean waitForExit(ProcessHandle ph,long wait)
+{
+   try {
+      ph.onExit().get(wait,TimeUnit.MILLISECONDS);
+    }
+   catch (InterruptedException | ExecutionException | TimeoutException e) { }
+
+   return !ph.isAlive();
+}
+
+
+}       // end of class BirdServerDescriptor
+
+
+
+
+/* end of BirdServerDescriptor.java */
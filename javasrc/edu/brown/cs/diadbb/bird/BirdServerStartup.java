@@ -0,0 +1,311 @@
+/********************************************************************************/
+/*                                                                              */
+/*              BirdServerStartup.java                                          */
+/*                                                                              */
+/*      Wait for a newly launched DIAD or LIMBA server to be ready              */
+/*                                                                              */
+/********************************************************************************/
+/*      Copyright 2025 Brown University -- Steven P. Reiss                    */
+/*********************************************************************************
+ *  Copyright 2025, Brown University, Providence, RI.                            *
+ *                                                                               *
+ *                        All Rights Reserved                                    *
+ *                                                                               *
+ * This program and the accompanying materials are made available under the      *
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution, *
+ * and is available at                                                           *
+ *      http://www.eclipse.org/legal/epl-v10.html                                *
+ *                                                                               *
+ ********************************************************************************/
+
+
+
+package edu.brown.cs.diadbb.bird;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.Optional;
+
+import edu.brown.cs.bubbles.board.BoardLog;
+import edu.brown.cs.bubbles.board.BoardSetup;
+import edu.brown.cs.ivy.exec.IvyExec;
+import edu.brown.cs.ivy.mint.MintConstants;
+import edu.brown.cs.ivy.mint.MintControl;
+import edu.brown.cs.ivy.mint.MintDefaultReply;
+
+/**
+ *      A server says it is ready either by sending <BIRD TYPE='READY'
+ *      SERVER='name' /> on Mint or by printing a line "name READY" on its
+ *      standard output.  Either wakes up the starting thread, which then
+ *      pings the server for its PONG.  If neither happens the server is
+ *      pinged with an increasing backoff.  If the process exits the wait
+ *      ends at once.
+ **/
+
+class BirdServerStartup implements BirdConstants, MintConstants
+{
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Private Storage                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+private String          server_name;
+private String          ping_message;
+private String          ready_line;
+private boolean         ready_signalled;
+private boolean         process_exited;
+private long            start_time;
+
+private static final long MIN_BACKOFF = 250;
+private static final long MAX_BACKOFF = 4000;
+private static final long PING_WAIT = 1000;
+private static final long READY_PING_WAIT = 5000;
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Constructors                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+BirdServerStartup(String name,String ping)
+{
+   server_name = name;
+   ping_message = ping;
+   ready_line = name + " READY";
+   ready_signalled = false;
+   process_exited = false;
+   start_time = System.currentTimeMillis();
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Access methods                                                          */
+/*                                                                              */
+/********************************************************************************/
+
+long getElapsedTime()
+{
+   return System.currentTimeMillis() - start_time;
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Launching methods                                                       */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Run the server and watch its output and exit.  Returns null if it
+ *      could not be started.
+ **/
+
+IvyExec launch(List<String> args)
+{
+   synchronized (this) {
+      // we might have been watching an earlier server that has exited
+      start_time = System.currentTimeMillis();
+      ready_signalled = false;
+      process_exited = false;
+    }
+
+   IvyExec exec = null;
+   try {
+      exec = new IvyExec(args,null,IvyExec.READ_OUTPUT|IvyExec.ERROR_OUTPUT);
+      BoardLog.logD("BIRD","Run " + exec.getCommand());
+    }
+   catch (IOException e) {
+      BoardLog.logE("BIRD","Problem starting " + server_name,e);
+      return null;
+    }
+
+   OutputReader rdr = new OutputReader(exec.getInputStream());
+   rdr.start();
+   ExitWatcher wch = new ExitWatcher(exec);
+   wch.start();
+
+   return exec;
+}
+
+
+
+/**
+ *      Watch a server started by another session so waiting for it ends
+ *      if it exits.
+ **/
+
+void watch(long pid)
+{
+   Optional<ProcessHandle> ph = ProcessHandle.of(pid);
+   if (ph.isPresent()) ph.get().onExit().thenRun(new HandleWatcher());
+   else signalExit(-1);
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Signal methods                                                          */
+/*                                                                              */
+/********************************************************************************/
+
+synchronized void signalReady(String how)
+{
+   BoardLog.logD("BIRD",server_name + " says it is ready (" + how + ") after " +
+         (System.currentTimeMillis() - start_time) + " ms");
+   ready_signalled = true;
+   notifyAll();
+}
+
+
+private void signalExit(int sts)
+{
+   BoardLog.logD("BIRD",server_name + " server exited with status " + sts);
+   synchronized (this) {
+      process_exited = true;
+      notifyAll();
+    }
+
+   BirdFactory.getFactory().getServerHealth().serverExited(server_name.equals("DIAD"));
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Waiting methods                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Send a single PING and return the reply, if any.
+ **/
+
+String ping(long wait)
+{
+   MintControl mc = BoardSetup.getSetup().getMintControl();
+   MintDefaultReply rply = new MintDefaultReply();
+   mc.send(ping_message,rply,MINT_MSG_FIRST_NON_NULL);
+
+   return rply.waitForString(wait);
+}
+
+
+/**
+ *      Wait for the server to answer a PING.  Returns the answer or null if
+ *      the process exited or the server did not answer in time.
+ **/
+
+String waitForPong(long maxwait)
+{
+   long end = System.currentTimeMillis() + maxwait;
+   long delay = MIN_BACKOFF;
+
+   while (System.currentTimeMillis() < end) {
+      boolean sig;
+      synchronized (this) {
+         if (!ready_signalled && !process_exited) {
+            try {
+               wait(delay);
+             }
+            catch (InterruptedException e) { }
+          }
+         if (process_exited) return null;
+         sig = ready_signalled;
+         ready_signalled = false;
+       }
+
+      String rslt = ping(sig ? READY_PING_WAIT : PING_WAIT);
+      BoardLog.logD("BIRD",server_name + " ping response " + rslt);
+      if (rslt != null) {
+         BoardLog.logD("BIRD",server_name + " answered after " +
+               (System.currentTimeMillis() - start_time) + " ms");
+         return rslt;
+       }
+      delay = Math.min(delay * 2,MAX_BACKOFF);
+    }
+
+   return null;
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Process watching threads                                                */
+/*                                                                              */
+/********************************************************************************/
+
+private final class OutputReader extends Thread {
+
+   private InputStream input_stream;
+
+   OutputReader(InputStream ins) {
+      super("Bird" + server_name + "Output");
+      setDaemon(true);
+      input_stream = ins;
+    }
+
+   @Override public void run() {
+      if (input_stream == null) return;
+      // keep reading so the server never blocks on a full pipe
+      try (BufferedReader br = new BufferedReader(new InputStreamReader(input_stream))) {
+         for ( ; ; ) {
+            String ln = br.readLine();
+            if (ln == null) break;
+            if (ln.trim().equals(ready_line)) signalReady("output");
+            else BoardLog.logD("BIRD",server_name + ": " + ln);
+          }
+       }
+      catch (IOException e) { }
+    }
+
+}       // end of inner class OutputReader
+
+
+
+private final class ExitWatcher extends Thread {
+
+   private IvyExec for_exec;
+
+   ExitWatcher(IvyExec exec) {
+      super("Bird" + server_name + "Exit");
+      setDaemon(true);
+      for_exec = exec;
+    }
+
+   @Override public void run() {
+      int sts = for_exec.waitFor();
+      signalExit(sts);
+    }
+
+}       // end of inner class ExitWatcher
+
+
+
+private final class HandleWatcher implements Runnable {
+
+   @Override public void run() {
+      signalExit(-1);
+    }
+
+}       // end of inner class HandleWatcher
+
+
+}       // end of class BirdServerStartup
+
+
+
+
+/* end of BirdServerStartup.java */
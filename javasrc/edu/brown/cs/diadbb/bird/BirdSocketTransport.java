@@ -0,0 +1,367 @@
+/********************************************************************************/
+/*                                                                              */
+/*              BirdSocketTransport.java                                        */
+/*                                                                              */
+/*      Direct unix domain socket connection to a local DIAD server             */
+/*                                                                              */
+/********************************************************************************/
+/*      Copyright 2025 Brown University -- Steven P. Reiss                    */
+/*********************************************************************************
+ *  Copyright 2025, Brown University, Providence, RI.                            *
+ *                                                                               *
+ *                        All Rights Reserved                                    *
+ *                                                                               *
+ * This program and the accompanying materials are made available under the      *
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution, *
+ * and is available at                                                           *
+ *      http://www.eclipse.org/legal/epl-v10.html                                *
+ *                                                                               *
+ ********************************************************************************/
+
+
+
+package edu.brown.cs.diadbb.bird;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.w3c.dom.Element;
+
+import edu.brown.cs.bubbles.board.BoardLog;
+import edu.brown.cs.ivy.xml.IvyXml;
+
+/**
+ *      Each frame is a 4 byte length (of what follows), a 4 byte message id,
+ *      a 1 byte frame type and the UTF-8 text of the message.  Requests from
+ *      either side that expect a reply have a non-zero id and the reply
+ *      frame carries the same id.  The connection is only an optimization:
+ *      if it cannot be set up or fails, messages go through Mint.
+ *
+ *      The reader thread only reads frames.  They are handled, one at a
+ *      time and in the order they arrived, by a separate handler thread so
+ *      a slow handler does not stop the connection from being read.  The
+ *      order matters: partial replies, update deltas and full updates all
+ *      rely on it.
+ **/
+
+class BirdSocketTransport implements BirdConstants
+{
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Private Storage                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+private BirdFactory     bird_factory;
+private BirdPayloadCodec payload_codec;
+private SocketChannel   socket_channel;
+private Map<Integer,CompletableFuture<Element>> pending_replies;
+private AtomicInteger   id_counter;
+private BlockingQueue<FrameTask> frame_queue;
+private volatile boolean is_open;
+
+private static final byte FRAME_REQUEST = 1;
+private static final byte FRAME_REPLY = 2;
+private static final byte FRAME_MESSAGE = 3;
+
+private static final int MAX_FRAME = 64*1024*1024;
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Constructors                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Connect to DIAD at the given socket path.  Returns null if unix
+ *      domain sockets are not available in this JVM or the connection
+ *      fails.
+ **/
+
+static BirdSocketTransport connect(BirdFactory bf,BirdPayloadCodec codec,String path)
+{
+   SocketChannel ch = null;
+   try {
+      // looked up reflectively since the code is built for an older JDK
+      Class<?> acls = Class.forName("java.net.UnixDomainSocketAddress");
+      Method of = acls.getMethod("of",String.class);
+      SocketAddress addr = (SocketAddress) of.invoke(null,path);
+      ProtocolFamily unix = StandardProtocolFamily.valueOf("UNIX");
+      Method open = SocketChannel.class.getMethod("open",ProtocolFamily.class);
+      ch = (SocketChannel) open.invoke(null,unix);
+      ch.connect(addr);
+    }
+   catch (ReflectiveOperationException | IllegalArgumentException e) {
+      BoardLog.logD("BIRD","Unix domain sockets not available: " + e);
+      return null;
+    }
+   catch (IOException e) {
+      BoardLog.logE("BIRD","Problem connecting to DIAD socket " + path,e);
+      try {
+         if (ch != null) ch.close();
+       }
+      catch (IOException ex) { }
+      return null;
+    }
+
+   BirdSocketTransport bst = new BirdSocketTransport(bf,codec,ch);
+   BoardLog.logD("BIRD","Connected to DIAD through " + path);
+
+   return bst;
+}
+
+
+private BirdSocketTransport(BirdFactory bf,BirdPayloadCodec codec,SocketChannel ch)
+{
+   bird_factory = bf;
+   payload_codec = codec;
+   socket_channel = ch;
+   pending_replies = new ConcurrentHashMap<>();
+   id_counter = new AtomicInteger(0);
+   is_open = true;
+   frame_queue = new LinkedBlockingQueue<>();
+
+   FrameHandler hdlr = new FrameHandler();
+   hdlr.start();
+   SocketReader rdr = new SocketReader();
+   rdr.start();
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Sending methods                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+boolean isOpen()                                { return is_open; }
+
+
+/**
+ *      Send a message that expects a reply, completing the future with the
+ *      reply.  Returns false if the message could not be sent this way.
+ **/
+
+boolean send(String msg,CompletableFuture<Element> fut)
+{
+   if (!is_open) return false;
+
+   int id = id_counter.incrementAndGet();
+   if (id == 0) id = id_counter.incrementAndGet();
+   pending_replies.put(id,fut);
+   try {
+      sendFrame(FRAME_REQUEST,id,msg);
+    }
+   catch (IOException e) {
+      pending_replies.remove(id);
+      BoardLog.logE("BIRD","Problem sending to DIAD socket",e);
+      close();
+      return false;
+    }
+
+   return true;
+}
+
+
+private synchronized void sendFrame(byte type,int id,String msg) throws IOException
+{
+   byte [] data = (msg == null ? new byte[0] : msg.getBytes(StandardCharsets.UTF_8));
+   ByteBuffer buf = ByteBuffer.allocate(9 + data.length);
+   buf.putInt(5 + data.length);
+   buf.putInt(id);
+   buf.put(type);
+   buf.put(data);
+   buf.flip();
+   while (buf.hasRemaining()) {
+      socket_channel.write(buf);
+    }
+}
+
+
+void close()
+{
+   synchronized (pending_replies) {
+      if (!is_open) return;
+      is_open = false;
+    }
+
+   try {
+      socket_channel.close();
+    }
+   catch (IOException e) { }
+
+   // anything still waiting will not get a reply on this channel
+   List<CompletableFuture<Element>> futs = new ArrayList<>(pending_replies.values());
+   pending_replies.clear();
+   for (CompletableFuture<Element> fut : futs) {
+      fut.complete(null);
+    }
+
+   // lets the handler thread finish what was read and then exit
+   frame_queue.add(new FrameTask((byte) 0,0,null));
+
+   BoardLog.logD("BIRD","DIAD socket closed; using Mint");
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Receiving methods                                                       */
+/*                                                                              */
+/********************************************************************************/
+
+private void handleFrame(byte type,int id,String text)
+{
+   switch (type) {
+      case FRAME_REPLY :
+         Element xml = (text.isEmpty() ? null : IvyXml.convertStringToXml(text));
+         xml = payload_codec.decode(xml);
+         CompletableFuture<Element> fut = pending_replies.remove(id);
+         if (fut != null) fut.complete(xml);
+         break;
+      case FRAME_REQUEST :
+      case FRAME_MESSAGE :
+         String rslt = null;
+         Map<String,String> attrs = BirdXmlReader.getRootAttributes(text);
+         String rid = (attrs == null ? null : attrs.get("RID"));
+         String cmd = (attrs == null ? null : attrs.get("DO"));
+         if (rid != null) {
+            bird_factory.handleDeferredReply(rid,text,attrs);
+          }
+         else if (cmd != null) {
+            rslt = bird_factory.handleDiadMessage(cmd,text,attrs);
+          }
+         if (type == FRAME_REQUEST) {
+            try {
+               sendFrame(FRAME_REPLY,id,rslt);
+             }
+            catch (IOException e) {
+               close();
+             }
+          }
+         break;
+      default :
+         BoardLog.logE("BIRD","Unknown DIAD socket frame type " + type);
+         break;
+    }
+}
+
+
+
+private final class SocketReader extends Thread {
+
+   SocketReader() {
+      super("BirdSocketReader");
+      setDaemon(true);
+    }
+
+   @Override public void run() {
+      ByteBuffer hdr = ByteBuffer.allocate(9);
+      try {
+         while (is_open) {
+            hdr.clear();
+            readFully(hdr);
+            hdr.flip();
+            int len = hdr.getInt();
+            int id = hdr.getInt();
+            byte type = hdr.get();
+            if (len < 5 || len > MAX_FRAME) throw new IOException("Bad frame length " + len);
+            ByteBuffer body = ByteBuffer.allocate(len - 5);
+            readFully(body);
+            String text = new String(body.array(),StandardCharsets.UTF_8);
+            frame_queue.add(new FrameTask(type,id,text));
+          }
+       }
+      catch (IOException e) {
+         if (is_open) BoardLog.logD("BIRD","DIAD socket read failed: " + e);
+       }
+      close();
+    }
+
+   private void readFully(ByteBuffer buf) throws IOException {
+      while (buf.hasRemaining()) {
+         if (socket_channel.read(buf) < 0) throw new EOFException();
+       }
+    }
+
+}       // end of inner class SocketReader
+
+
+
+private final class FrameHandler extends Thread {
+
+   FrameHandler() {
+      super("BirdSocketHandler");
+      setDaemon(true);
+    }
+
+   @Override public void run() {
+      for ( ; ; ) {
+         FrameTask ft = null;
+         try {
+            ft = frame_queue.take();
+          }
+         catch (InterruptedException e) {
+            continue;
+          }
+         if (ft.isEnd()) break;
+         try {
+            handleFrame(ft.getType(),ft.getId(),ft.getText());
+          }
+         catch (Throwable t) {
+            BoardLog.logE("BIRD","Problem handling DIAD socket message",t);
+          }
+       }
+    }
+
+}       // end of inner class FrameHandler
+
+
+
+private static final class FrameTask {
+
+   private byte frame_type;
+   private int frame_id;
+   private String frame_text;
+
+   FrameTask(byte type,int id,String text) {
+      frame_type = type;
+      frame_id = id;
+      frame_text = text;
+    }
+
+   boolean isEnd()                              { return frame_text == null; }
+   byte getType()                               { return frame_type; }
+   int getId()                                  { return frame_id; }
+   String getText()                             { return frame_text; }
+
+}       // end of inner class FrameTask
+
+
+}       // end of class BirdSocketTransport
+
+
+
+
+/* end of BirdSocketTransport.java */
@@ -29,6 +29,7 @@ import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.function.Consumer;
 
 import javax.swing.JButton;
 import javax.swing.JTabbedPane;
@@ -157,6 +158,15 @@ private int findPanelIndex()
 
 
 
+@Override public boolean showsDebugInstance(BirdInstance bi)
+{
+   if (debug_panel == null) return false;
+
+   return bi.getId().equals(debug_panel.getInstance().getId());
+}
+
+
+
 @Override public boolean isIdRelevant(String id)
 {
    if (id != null && id.equals(debug_id)) return true;
@@ -177,7 +187,14 @@ private void setDebugId(String id)
    debug_id = id;
    BirdFactory fac = BirdFactory.getFactory();
    CommandArgs args = new CommandArgs("DEBUGID",debug_id);
-   fac.sendDiadMessage("STARTSTACK",args,null);
+   fac.sendDiadMessageAsync("STARTSTACK",args,null);
+   fac.watchCandidate(this,debug_id);
+}
+
+
+@Override public void localDispose()
+{
+   BirdFactory.getFactory().removeDebugSet(this);
 }
 
 
@@ -224,7 +241,7 @@ private class DebugTabs extends JTabbedPane {
 /********************************************************************************/
 
 private class StackTracePanel extends SwingGridPanel implements UndoableEditListener,
-      ActionListener {
+      ActionListener, Consumer<Element> {
    
    private JTextArea text_area;
    private JButton debug_button;
@@ -258,8 +275,16 @@ private class StackTracePanel extends SwingGridPanel implements UndoableEditList
       String cnts = xw.toString();
       xw.close();
       BirdFactory bf = BirdFactory.getFactory();
-      Element rslt = bf.sendDiadMessage("STACKDEBUG",null,cnts);
-      if (IvyXml.isElement(rslt,"RESULT")) {
+      debug_button.setEnabled(false);
+      bf.sendDiadMessageAsync("STACKDEBUG",null,cnts)
+         .thenAcceptAsync(this,bf.getSwingExecutor());
+    }
+   
+   @Override public void accept(Element rslt) {
+      if (!IvyXml.isElement(rslt,"RESULT")) {
+         debug_button.setEnabled(true);
+       }
+      else {
          String id = IvyXml.getAttrString(rslt,"ID");
          if (id == null) {
             BudaBubbleArea bba = BudaRoot.findBudaBubbleArea(this);
@@ -268,10 +293,10 @@ private class StackTracePanel extends SwingGridPanel implements UndoableEditList
                bba.addBubble(bub, BirdStackTraceBubble.this, null,
                      BudaConstants.PLACEMENT_LEFT);
              }
+            debug_button.setEnabled(true);
             return;
           }
          setDebugId(id);
-         debug_button.setEnabled(false);
        } 
     }
    
@@ -0,0 +1,201 @@
+/********************************************************************************/
+/*                                                                              */
+/*              BirdSubscriptions.java                                          */
+/*                                                                              */
+/*      Tell DIAD which candidate updates someone is looking at                 */
+/*                                                                              */
+/********************************************************************************/
+/*      Copyright 2025 Brown University -- Steven P. Reiss                    */
+/*********************************************************************************
+ *  Copyright 2025, Brown University, Providence, RI.                            *
+ *                                                                               *
+ *                        All Rights Reserved                                    *
+ *                                                                               *
+ * This program and the accompanying materials are made available under the      *
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution, *
+ * and is available at                                                           *
+ *      http://www.eclipse.org/legal/epl-v10.html                                *
+ *                                                                               *
+ ********************************************************************************/
+
+
+
+package edu.brown.cs.diadbb.bird;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import edu.brown.cs.bubbles.board.BoardLog;
+import edu.brown.cs.ivy.mint.MintConstants.CommandArgs;
+
+/**
+ *      DIAD pushes an update for a candidate if all candidates are
+ *      subscribed (ALL) and the candidate has not been unsubscribed, or if
+ *      the candidate has been subscribed by its DEBUGID.  Debug bubbles
+ *      find their candidates by thread, so while any is open all
+ *      candidates are subscribed; a candidate none of them wants is then
+ *      unsubscribed on its own.  Stack trace bubbles subscribe to the one
+ *      candidate they start.  A SUBSCRIBE makes DIAD send a full update of
+ *      the candidates it covers.
+ **/
+
+class BirdSubscriptions implements BirdConstants
+{
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Private Storage                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+private BirdFactory     bird_factory;
+private boolean         use_subscriptions;
+private Set<BirdDebugSet> thread_sets;
+private Map<BirdDebugSet,String> id_sets;
+private Set<String>     muted_ids;
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Constructors                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+BirdSubscriptions(BirdFactory bf,boolean use)
+{
+   bird_factory = bf;
+   use_subscriptions = use;
+   thread_sets = new HashSet<>();
+   id_sets = new HashMap<>();
+   muted_ids = new HashSet<>();
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Debug set methods                                                       */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Note a new debug set.  If threads is true the set looks for
+ *      candidates by thread and so needs all of them.
+ **/
+
+synchronized void addDebugSet(BirdDebugSet ds,boolean threads)
+{
+   if (!threads) return;
+
+   thread_sets.add(ds);
+   if (thread_sets.size() == 1 || !muted_ids.isEmpty()) {
+      // the new bubble might want candidates that were unsubscribed
+      muted_ids.clear();
+      send("SUBSCRIBE",null);
+    }
+}
+
+
+synchronized void removeDebugSet(BirdDebugSet ds)
+{
+   id_sets.remove(ds);
+
+   if (thread_sets.remove(ds) && thread_sets.isEmpty()) {
+      muted_ids.clear();
+      send("UNSUBSCRIBE",null);
+      // updates stop, so what we know of the candidates will go stale
+      bird_factory.forgetUnwatched(new HashSet<>(id_sets.values()));
+    }
+}
+
+
+synchronized void watchCandidate(BirdDebugSet ds,String id)
+{
+   if (id == null) return;
+
+   id_sets.put(ds,id);
+   muted_ids.remove(id);
+   send("SUBSCRIBE",id);
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Candidate methods                                                       */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Called when an update arrives that no debug set is interested in.
+ **/
+
+synchronized void ignoreCandidate(String id)
+{
+   if (thread_sets.isEmpty() || id_sets.containsValue(id)) return;
+
+   if (muted_ids.add(id)) {
+      send("UNSUBSCRIBE",id);
+    }
+}
+
+
+synchronized void candidateRemoved(String id)
+{
+   muted_ids.remove(id);
+}
+
+
+/**
+ *      Send the current subscriptions to a newly started or reconnected
+ *      DIAD, which starts out sending everything.
+ **/
+
+synchronized void restore()
+{
+   if (!use_subscriptions) return;
+
+   BoardLog.logD("BIRD","Restore subscriptions: " + thread_sets.size() + " " +
+         id_sets.size() + " " + muted_ids.size());
+
+   if (thread_sets.isEmpty()) send("UNSUBSCRIBE",null);
+   else send("SUBSCRIBE",null);
+   for (String id : new HashSet<>(id_sets.values())) {
+      send("SUBSCRIBE",id);
+    }
+   for (String id : muted_ids) {
+      send("UNSUBSCRIBE",id);
+    }
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Messaging methods                                                       */
+/*                                                                              */
+/********************************************************************************/
+
+private void send(String cmd,String id)
+{
+   if (!use_subscriptions) return;
+
+   CommandArgs args = null;
+   if (id == null) args = new CommandArgs("ALL",true);
+   else args = new CommandArgs("DEBUGID",id);
+
+   BoardLog.logD("BIRD","Update subscription " + cmd + " " + (id == null ? "ALL" : id));
+   bird_factory.sendDiadMessageAsync(cmd,args,null);
+}
+
+
+}       // end of class BirdSubscriptions
+
+
+
+
+/* end of BirdSubscriptions.java */
@@ -32,6 +32,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.function.Consumer;
 
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
@@ -373,19 +374,13 @@ private class TestPanel extends SwingGridPanel implements ActionListener {
       totest_field = addTextField("Test",test_item,null,null);
       totest_field.setEditable(false);
       
-      CommandArgs args = new CommandArgs("DEBUGID",for_instance.getId());
-      Element xml = BirdFactory.getFactory().sendDiadMessage("STARTFRAME",
-            args,null);
       List<FrameElement> choices = new ArrayList<>();
       FrameElement sel = null;
-      for (Element frm : IvyXml.children(IvyXml.getChild(xml,"FRAMES"))) {
-         FrameElement fe = new FrameElement(frm);
-         if (fe.isValid()) {
-            choices.add(fe);
-            if (fe.getId().equals(start_frame)) sel = fe;
-          }
-       }
       frame_field = addChoice("Start Frame",choices,sel,false,this);
+      CommandArgs args = new CommandArgs("DEBUGID",for_instance.getId());
+      BirdFactory bf = BirdFactory.getFactory();
+      bf.sendDiadMessageAsync("STARTFRAME",args,null)
+         .thenAcceptAsync(new FrameLoader(this),bf.getSwingExecutor());
       
       addSeparator();
       
@@ -442,8 +437,21 @@ private class TestPanel extends SwingGridPanel implements ActionListener {
    String getTestName()                         { return name_field.getText(); }
    String getStartFrame() {
       FrameElement fe = (FrameElement) frame_field.getSelectedItem();
+      if (fe == null) return start_frame;
       return fe.getId();
     }
+   
+   void setFrames(Element xml) {
+      FrameElement sel = null;
+      for (Element frm : IvyXml.children(IvyXml.getChild(xml,"FRAMES"))) {
+         FrameElement fe = new FrameElement(frm);
+         if (fe.isValid()) {
+            frame_field.addItem(fe);
+            if (fe.getId().equals(start_frame)) sel = fe;
+          }
+       }
+      if (sel != null) frame_field.setSelectedItem(sel);
+    }
    String getTextCode()                         { return code_area.getText(); }
    
    String getInsertClass() {
@@ -493,6 +501,23 @@ private class TestPanel extends SwingGridPanel implements ActionListener {
 
 
 
+private final class FrameLoader implements Consumer<Element> {
+   
+   private TestPanel for_panel;
+   
+   FrameLoader(TestPanel pnl) {
+      for_panel = pnl;
+    }
+   
+   @Override public void accept(Element xml) {
+      if (test_panel != for_panel) return;
+      for_panel.setFrames(xml);
+    }
+   
+}       // end of inner class FrameLoader
+
+
+
 private final class FrameElement {
 
    private Element frame_xml;
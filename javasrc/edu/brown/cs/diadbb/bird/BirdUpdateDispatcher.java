@@ -0,0 +1,407 @@
+/********************************************************************************/
+/*                                                                              */
+/*              BirdUpdateDispatcher.java                                       */
+/*                                                                              */
+/*      Parse, diff and coalesce candidate updates before applying them         */
+/*                                                                              */
+/********************************************************************************/
+/*      Copyright 2025 Brown University -- Steven P. Reiss                    */
+/*********************************************************************************
+ *  Copyright 2025, Brown University, Providence, RI.                            *
+ *                                                                               *
+ *                        All Rights Reserved                                    *
+ *                                                                               *
+ * This program and the accompanying materials are made available under the      *
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution, *
+ * and is available at                                                           *
+ *      http://www.eclipse.org/legal/epl-v10.html                                *
+ *                                                                               *
+ ********************************************************************************/
+
+
+
+package edu.brown.cs.diadbb.bird;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import javax.swing.Timer;
+import javax.xml.stream.XMLStreamException;
+
+import org.w3c.dom.Element;
+
+import edu.brown.cs.bubbles.board.BoardLog;
+import edu.brown.cs.ivy.xml.IvyXml;
+
+class BirdUpdateDispatcher implements BirdConstants, ActionListener
+{
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Private Storage                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+private BirdFactory     bird_factory;
+private BlockingQueue<QueuedUpdate> parse_queue;
+private Map<String,BirdCandidate> last_snapshots;
+private Set<String>     resync_pending;
+private Map<String,PendingUpdate> pending_updates;
+private Timer           drain_timer;
+private long            update_count;
+private long            merged_count;
+private long            unchanged_count;
+private long            delta_count;
+private long            resync_count;
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Constructors                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+BirdUpdateDispatcher(BirdFactory bf,int delay)
+{
+   bird_factory = bf;
+   parse_queue = new LinkedBlockingQueue<>();
+   last_snapshots = new HashMap<>();
+   resync_pending = ConcurrentHashMap.newKeySet();
+   pending_updates = new LinkedHashMap<>();
+   update_count = 0;
+   merged_count = 0;
+   unchanged_count = 0;
+   delta_count = 0;
+   resync_count = 0;
+   drain_timer = new Timer(delay,this);
+   drain_timer.setRepeats(false);
+   drain_timer.setCoalesce(true);
+
+   UpdateParser parser = new UpdateParser();
+   parser.start();
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Access methods                                                          */
+/*                                                                              */
+/********************************************************************************/
+
+synchronized long getUpdateCount()              { return update_count; }
+
+synchronized long getMergedCount()              { return merged_count; }
+
+synchronized long getUnchangedCount()           { return unchanged_count; }
+
+synchronized long getDeltaCount()               { return delta_count; }
+
+synchronized long getResyncCount()              { return resync_count; }
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Posting methods                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Note a new update for a candidate.  The update is parsed into a
+ *      snapshot and compared with the previous one on the parser thread.
+ **/
+
+void postUpdate(Element xml)
+{
+   Element cand = xml;
+   if (IvyXml.isElement(xml,"DIADREPLY")) {
+      cand = IvyXml.getChild(xml,"CANDIDATE");
+    }
+   if (cand == null) return;
+
+   parse_queue.add(new QueuedUpdate(cand,null,null));
+}
+
+
+/**
+ *      Note a new update given as the text of the message.  Only the
+ *      fields the snapshot needs are pulled out of the text.
+ **/
+
+void postUpdate(String text)
+{
+   if (text == null) return;
+
+   parse_queue.add(new QueuedUpdate(null,text,null));
+}
+
+
+/**
+ *      Forget what we know of a candidate that is no longer shown.  If it
+ *      is subscribed again later, the full update DIAD sends is then
+ *      treated as new rather than as unchanged.  This goes through the
+ *      parser queue since only the parser thread touches the snapshots.
+ **/
+
+void forgetCandidate(String id)
+{
+   if (id == null) return;
+
+   parse_queue.add(new QueuedUpdate(null,null,id));
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Parsing methods                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+private void parseUpdate(QueuedUpdate upd)
+{
+   if (upd.getForgetId() != null) {
+      forget(upd.getForgetId());
+      return;
+    }
+
+   BirdCandidate snap = upd.getCandidate();
+   if (snap == null) return;
+   String id = snap.getId();
+   if (id == null) return;
+
+   // only the parser thread touches last_snapshots
+   BirdCandidate prev = last_snapshots.get(id);
+   if (snap.isDelta()) {
+      if (resync_pending.contains(id)) return;
+      if (!snap.followsFrom(prev)) {
+         requestResync(id,prev,snap);
+         return;
+       }
+      snap = BirdCandidate.applyDelta(prev,snap);
+      synchronized (this) {
+         ++delta_count;
+       }
+    }
+   else {
+      resync_pending.remove(id);
+    }
+   EnumSet<DiadCandidateChange> chng = snap.getChanges(prev);
+   if (snap.shouldRemove()) last_snapshots.remove(id);
+   else last_snapshots.put(id,snap);
+
+   addPending(snap,chng);
+}
+
+
+private void forget(String id)
+{
+   last_snapshots.remove(id);
+   resync_pending.remove(id);
+   synchronized (this) {
+      pending_updates.remove(id);
+    }
+}
+
+
+/**
+ *      A delta was missed or arrived for a candidate we have no snapshot
+ *      of.  Ask DIAD for a full update and ignore deltas until it comes.
+ **/
+
+private void requestResync(String id,BirdCandidate prev,BirdCandidate delta)
+{
+   long have = (prev == null ? -1 : prev.getSequence());
+   BoardLog.logD("BIRD","Update gap for " + id + ": have " + have + ", got " +
+         delta.getSequence() + "; requesting resync");
+
+   resync_pending.add(id);
+   synchronized (this) {
+      ++resync_count;
+    }
+
+   bird_factory.requestResync(id,have);
+}
+
+
+/**
+ *      Called if DIAD did not answer a resync request.  The next delta
+ *      for the candidate will ask again.
+ **/
+
+void resyncFailed(String id)
+{
+   resync_pending.remove(id);
+}
+
+
+/**
+ *      Keep only the latest snapshot for each candidate along with the
+ *      union of the changes since the last drain; all pending updates are
+ *      applied together on the next tick of the drain timer.
+ **/
+
+private void addPending(BirdCandidate snap,EnumSet<DiadCandidateChange> chng)
+{
+   boolean start = false;
+   synchronized (this) {
+      ++update_count;
+      PendingUpdate pu = pending_updates.remove(snap.getId());
+      if (pu != null) {
+         ++merged_count;
+         pu.merge(snap,chng);
+       }
+      else if (chng.isEmpty()) {
+         ++unchanged_count;
+         return;
+       }
+      else {
+         pu = new PendingUpdate(snap,chng);
+       }
+      // reinserting moves a replaced candidate to the end of the order
+      pending_updates.put(snap.getId(),pu);
+      start = (pending_updates.size() == 1);
+    }
+
+   if (start) drain_timer.restart();
+}
+
+
+
+private final class UpdateParser extends Thread {
+
+   UpdateParser() {
+      super("BirdUpdateParser");
+      setDaemon(true);
+    }
+
+   @Override public void run() {
+      for ( ; ; ) {
+         try {
+            QueuedUpdate upd = parse_queue.take();
+            parseUpdate(upd);
+          }
+         catch (InterruptedException e) { }
+         catch (Throwable t) {
+            BoardLog.logE("BIRD","Problem parsing candidate update",t);
+          }
+       }
+    }
+
+}       // end of inner class UpdateParser
+
+
+
+private static final class QueuedUpdate {
+
+   private Element update_xml;
+   private String update_text;
+   private String forget_id;
+
+   QueuedUpdate(Element xml,String text,String forget) {
+      update_xml = xml;
+      update_text = text;
+      forget_id = forget;
+    }
+
+   String getForgetId()                         { return forget_id; }
+
+   BirdCandidate getCandidate() {
+      if (update_xml == null && update_text == null) return null;
+      if (update_text != null) {
+         try {
+            return BirdCandidate.readCandidate(update_text);
+          }
+         catch (XMLStreamException e) {
+            BoardLog.logD("BIRD","Parse update using DOM: " + e);
+          }
+         Element xml = IvyXml.convertStringToXml(update_text);
+         update_xml = xml;
+         if (IvyXml.isElement(xml,"DIADREPLY")) {
+            update_xml = IvyXml.getChild(xml,"CANDIDATE");
+          }
+         if (update_xml == null) return null;
+       }
+
+      return new BirdCandidate(update_xml);
+    }
+
+}       // end of inner class QueuedUpdate
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Drain methods                                                           */
+/*                                                                              */
+/********************************************************************************/
+
+@Override public void actionPerformed(ActionEvent evt)
+{
+   List<PendingUpdate> todo;
+   long merged;
+   long same;
+   synchronized (this) {
+      todo = new ArrayList<>(pending_updates.values());
+      pending_updates.clear();
+      merged = merged_count;
+      same = unchanged_count;
+    }
+
+   if (todo.isEmpty()) return;
+
+   BoardLog.logD("BIRD","Apply " + todo.size() + " candidate updates (" +
+         merged + " merged, " + same + " unchanged so far)");
+
+   for (PendingUpdate pu : todo) {
+      try {
+         bird_factory.handleUpdate(pu.getCandidate(),pu.getChanges());
+       }
+      catch (Throwable t) {
+         BoardLog.logE("BIRD","Problem applying candidate update",t);
+       }
+    }
+}
+
+
+
+private static final class PendingUpdate {
+
+   private BirdCandidate for_candidate;
+   private EnumSet<DiadCandidateChange> candidate_changes;
+
+   PendingUpdate(BirdCandidate snap,EnumSet<DiadCandidateChange> chng) {
+      for_candidate = snap;
+      candidate_changes = EnumSet.copyOf(chng);
+    }
+
+   BirdCandidate getCandidate()                         { return for_candidate; }
+   EnumSet<DiadCandidateChange> getChanges()            { return candidate_changes; }
+
+   void merge(BirdCandidate snap,EnumSet<DiadCandidateChange> chng) {
+      for_candidate = snap;
+      candidate_changes.addAll(chng);
+    }
+
+}       // end of inner class PendingUpdate
+
+
+}       // end of class BirdUpdateDispatcher
+
+
+
+
+/* end of BirdUpdateDispatcher.java */
@@ -0,0 +1,227 @@
+/********************************************************************************/
+/*                                                                              */
+/*              BirdXmlReader.java                                              */
+/*                                                                              */
+/*      Pull parsing of the parts of DIAD messages that are actually used       */
+/*                                                                              */
+/********************************************************************************/
+/*      Copyright 2025 Brown University -- Steven P. Reiss                    */
+/*********************************************************************************
+ *  Copyright 2025, Brown University, Providence, RI.                            *
+ *                                                                               *
+ *                        All Rights Reserved                                    *
+ *                                                                               *
+ * This program and the accompanying materials are made available under the      *
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution, *
+ * and is available at                                                           *
+ *      http://www.eclipse.org/legal/epl-v10.html                                *
+ *                                                                               *
+ ********************************************************************************/
+
+
+
+package edu.brown.cs.diadbb.bird;
+
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import edu.brown.cs.bubbles.board.BoardLog;
+
+/**
+ *      Updates and streamed replies arrive often and only a few attributes
+ *      and text elements of each are looked at.  These methods get those
+ *      directly from the message text without building a DOM tree.  They
+ *      return null if the text can not be parsed so the caller can fall
+ *      back to the DOM.
+ **/
+
+final class BirdXmlReader implements BirdConstants
+{
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Private Storage                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+private static XMLInputFactory input_factory = null;
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Constructors                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+private BirdXmlReader()                         { }
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Reader creation                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+static synchronized XMLStreamReader createReader(String text) throws XMLStreamException
+{
+   if (input_factory == null) {
+      input_factory = XMLInputFactory.newInstance();
+      input_factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE,false);
+      input_factory.setProperty(XMLInputFactory.IS_COALESCING,true);
+      input_factory.setProperty(XMLInputFactory.SUPPORT_DTD,false);
+    }
+
+   return input_factory.createXMLStreamReader(new StringReader(text));
+}
+
+
+static void closeReader(XMLStreamReader rdr)
+{
+   if (rdr == null) return;
+   try {
+      rdr.close();
+    }
+   catch (XMLStreamException e) { }
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Access methods                                                          */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Return the attributes of the top level element.  Only the start of
+ *      the message is read.
+ **/
+
+static Map<String,String> getRootAttributes(String text)
+{
+   if (text == null || text.isEmpty()) return null;
+
+   XMLStreamReader rdr = null;
+   try {
+      rdr = createReader(text);
+      while (rdr.hasNext()) {
+         if (rdr.next() == XMLStreamConstants.START_ELEMENT) {
+            Map<String,String> rslt = new HashMap<>();
+            for (int i = 0; i < rdr.getAttributeCount(); ++i) {
+               rslt.put(rdr.getAttributeLocalName(i),rdr.getAttributeValue(i));
+             }
+            return rslt;
+          }
+       }
+    }
+   catch (XMLStreamException e) {
+      BoardLog.logD("BIRD","Problem reading message header: " + e);
+    }
+   finally {
+      closeReader(rdr);
+    }
+
+   return null;
+}
+
+
+/**
+ *      Return the text of the first child of the top level element with
+ *      the given name, or null if there is none.
+ **/
+
+static String getChildText(String text,String elt)
+{
+   if (text == null || text.isEmpty()) return null;
+
+   XMLStreamReader rdr = null;
+   try {
+      rdr = createReader(text);
+      int depth = 0;
+      while (rdr.hasNext()) {
+         int evt = rdr.next();
+         if (evt == XMLStreamConstants.START_ELEMENT) {
+            ++depth;
+            if (depth == 2 && rdr.getLocalName().equals(elt)) {
+               return readText(rdr);
+             }
+          }
+         else if (evt == XMLStreamConstants.END_ELEMENT) {
+            --depth;
+          }
+       }
+    }
+   catch (XMLStreamException e) {
+      BoardLog.logD("BIRD","Problem reading message text: " + e);
+    }
+   finally {
+      closeReader(rdr);
+    }
+
+   return null;
+}
+
+
+/**
+ *      Return the text directly inside the current element and leave the
+ *      reader at its end.  Text inside nested elements is skipped.
+ **/
+
+static String readText(XMLStreamReader rdr) throws XMLStreamException
+{
+   StringBuffer buf = new StringBuffer();
+   int depth = 1;
+   while (depth > 0 && rdr.hasNext()) {
+      switch (rdr.next()) {
+         case XMLStreamConstants.START_ELEMENT :
+            ++depth;
+            break;
+         case XMLStreamConstants.END_ELEMENT :
+            --depth;
+            break;
+         case XMLStreamConstants.CHARACTERS :
+         case XMLStreamConstants.CDATA :
+         case XMLStreamConstants.SPACE :
+            if (depth == 1) buf.append(rdr.getText());
+            break;
+         default :
+            break;
+       }
+    }
+
+   return buf.toString();
+}
+
+
+static boolean getBoolean(String v)
+{
+   if (v == null || v.isEmpty()) return false;
+
+   switch (v.charAt(0)) {
+      case 't' :
+      case 'T' :
+      case 'y' :
+      case 'Y' :
+      case '1' :
+         return true;
+      default :
+         return false;
+    }
+}
+
+
+}       // end of class BirdXmlReader
+
+
+
+
+/* end of BirdXmlReader.java */
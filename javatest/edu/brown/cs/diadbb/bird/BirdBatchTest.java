@@ -0,0 +1,238 @@
+/********************************************************************************/
+/*                                                                              */
+/*              BirdBatchTest.java                                              */
+/*                                                                              */
+/*      Test BATCH round trips against the stand-in server                      */
+/*                                                                              */
+/********************************************************************************/
+/*      Copyright 2025 Brown University -- Steven P. Reiss                    */
+/*********************************************************************************
+ *  Copyright 2025, Brown University, Providence, RI.                            *
+ *                                                                               *
+ *                        All Rights Reserved                                    *
+ *                                                                               *
+ * This program and the accompanying materials are made available under the      *
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution, *
+ * and is available at                                                           *
+ *      http://www.eclipse.org/legal/epl-v10.html                                *
+ *                                                                               *
+ ********************************************************************************/
+
+
+
+package edu.brown.cs.diadbb.bird;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.w3c.dom.Element;
+
+import edu.brown.cs.ivy.mint.MintConstants.CommandArgs;
+import edu.brown.cs.ivy.xml.IvyXml;
+
+/**
+ *      Run with a configured bubbles setup (for the Mint name and workspace)
+ *      and no DIAD running on that Mint name.  Exits with status 1 if any
+ *      check fails.
+ **/
+
+public final class BirdBatchTest implements BirdConstants
+{
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Main program                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+public static void main(String [] args)
+{
+   BirdBatchTest bt = new BirdBatchTest();
+   bt.process();
+
+   System.exit(bt.failure_count == 0 ? 0 : 1);
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Private Storage                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+private BirdFactory     bird_factory;
+private BirdStandInServer stand_in;
+private int             failure_count;
+
+private static final long WAIT = 120000;
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Constructors                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+private BirdBatchTest()
+{
+   bird_factory = BirdFactory.getFactory();
+   stand_in = new BirdStandInServer();
+   failure_count = 0;
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Test methods                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+private void process()
+{
+   stand_in.start();
+   bird_factory.useRunningServers();
+
+   testBatch();
+   testSilent();
+   // this one turns BATCH off for the session, so it comes last
+   testUnsupported();
+
+   System.out.println("BirdBatchTest: " + failure_count + " failures");
+}
+
+
+/**
+ *      A batch goes as one message and its replies come back in order.
+ **/
+
+private void testBatch()
+{
+   stand_in.clear();
+   stand_in.setBatchMode(BirdStandInServer.BatchMode.NORMAL);
+
+   List<Element> rslt = send(getCommands());
+
+   check(rslt != null && rslt.size() == 2,"batch returns one reply per command");
+   check(stand_in.getBatchCount() == 1,"batch is sent as one message");
+   check(getCommand(rslt,0).equals("PARAMETER"),"first reply is for PARAMETER");
+   check(getCommand(rslt,1).equals("SETMODEL"),"second reply is for SETMODEL");
+   check(stand_in.getReceivedCommands().equals(getNames()),"server runs commands in order");
+}
+
+
+/**
+ *      A batch that is never answered completes with nulls and is not sent
+ *      again command by command.
+ **/
+
+private void testSilent()
+{
+   stand_in.clear();
+   stand_in.setBatchMode(BirdStandInServer.BatchMode.SILENT);
+
+   List<Element> rslt = send(getCommands());
+
+   check(rslt != null && rslt.size() == 2,"unanswered batch completes");
+   check(rslt != null && rslt.get(0) == null && rslt.get(1) == null,
+         "unanswered batch has no replies");
+   check(stand_in.getBatchCount() == 1,"unanswered batch is sent once");
+   check(stand_in.getReceivedCommands().isEmpty(),"unanswered batch is not resent");
+}
+
+
+/**
+ *      A server that doesn't know BATCH gets the commands one at a time.
+ **/
+
+private void testUnsupported()
+{
+   stand_in.clear();
+   stand_in.setBatchMode(BirdStandInServer.BatchMode.UNSUPPORTED);
+
+   List<Element> rslt = send(getCommands());
+
+   check(rslt != null && rslt.size() == 2,"fallback returns one reply per command");
+   check(getCommand(rslt,0).equals("PARAMETER"),"fallback reply is for PARAMETER");
+   check(getCommand(rslt,1).equals("SETMODEL"),"fallback reply is for SETMODEL");
+   check(stand_in.getReceivedCommands().equals(getNames()),"fallback sends each command");
+
+   stand_in.clear();
+   send(getCommands());
+   check(stand_in.getBatchCount() == 0,"BATCH is not tried again");
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Helper methods                                                          */
+/*                                                                              */
+/********************************************************************************/
+
+private List<Element> send(List<BirdCommand> cmds)
+{
+   try {
+      return bird_factory.sendBatch(cmds).get(WAIT,TimeUnit.MILLISECONDS);
+    }
+   catch (InterruptedException | ExecutionException | TimeoutException e) {
+      System.out.println("Batch failed: " + e);
+    }
+
+   return null;
+}
+
+
+private static List<BirdCommand> getCommands()
+{
+   List<BirdCommand> cmds = new ArrayList<>();
+   cmds.add(new BirdCommand("PARAMETER",new CommandArgs("NAME","test"),null));
+   cmds.add(new BirdCommand("SETMODEL",null,"<MODEL NAME='test' />"));
+
+   return cmds;
+}
+
+
+private static List<String> getNames()
+{
+   List<String> rslt = new ArrayList<>();
+   for (BirdCommand bc : getCommands()) {
+      rslt.add(bc.getCommand());
+    }
+
+   return rslt;
+}
+
+
+private static String getCommand(List<Element> rslt,int idx)
+{
+   if (rslt == null || rslt.size() <= idx || rslt.get(idx) == null) return "";
+
+   String cmd = IvyXml.getAttrString(rslt.get(idx),"DO");
+
+   return (cmd == null ? "" : cmd);
+}
+
+
+private void check(boolean fg,String what)
+{
+   if (fg) System.out.println("PASS: " + what);
+   else {
+      System.out.println("FAIL: " + what);
+      ++failure_count;
+    }
+}
+
+
+}       // end of class BirdBatchTest
+
+
+
+
+/* end of BirdBatchTest.java */
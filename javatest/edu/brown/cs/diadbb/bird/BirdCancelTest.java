@@ -0,0 +1,221 @@
+/********************************************************************************/
+/*                                                                              */
+/*              BirdCancelTest.java                                             */
+/*                                                                              */
+/*      Test cancellation of deferred queries against the stand-in server       */
+/*                                                                              */
+/********************************************************************************/
+/*      Copyright 2025 Brown University -- Steven P. Reiss                    */
+/*********************************************************************************
+ *  Copyright 2025, Brown University, Providence, RI.                            *
+ *                                                                               *
+ *                        All Rights Reserved                                    *
+ *                                                                               *
+ * This program and the accompanying materials are made available under the      *
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution, *
+ * and is available at                                                           *
+ *      http://www.eclipse.org/legal/epl-v10.html                                *
+ *                                                                               *
+ ********************************************************************************/
+
+
+
+package edu.brown.cs.diadbb.bird;
+
+import org.w3c.dom.Element;
+
+import edu.brown.cs.ivy.mint.MintConstants.CommandArgs;
+
+/**
+ *      Run with a configured bubbles setup (for the Mint name and workspace)
+ *      and no DIAD running on that Mint name.  Exits with status 1 if any
+ *      check fails.
+ **/
+
+public final class BirdCancelTest implements BirdConstants
+{
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Main program                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+public static void main(String [] args)
+{
+   BirdCancelTest bt = new BirdCancelTest();
+   bt.process();
+
+   System.exit(bt.failure_count == 0 ? 0 : 1);
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Private Storage                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+private BirdFactory     bird_factory;
+private BirdStandInServer stand_in;
+private int             failure_count;
+
+private static final long WAIT = 5000;
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Constructors                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+private BirdCancelTest()
+{
+   bird_factory = BirdFactory.getFactory();
+   stand_in = new BirdStandInServer();
+   failure_count = 0;
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Test methods                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+private void process()
+{
+   stand_in.start();
+   bird_factory.useRunningServers();
+
+   testCancelPending();
+   testLateReply();
+   testCancelAnswered();
+
+   System.out.println("BirdCancelTest: " + failure_count + " failures");
+}
+
+
+/**
+ *      Cancelling a query that has been sent sends CANCEL with its RID and
+ *      releases its correlation entry.
+ **/
+
+private void testCancelPending()
+{
+   stand_in.clear();
+   TestHandler th = new TestHandler();
+   String rid = bird_factory.issueCommand("ASKLIMBA",getArgs(),null,null,th);
+
+   check(stand_in.waitForRequest(rid,WAIT),"query reaches the server");
+   check(bird_factory.getReplyRegistry().get(rid) != null,"query is registered");
+
+   bird_factory.cancelCommand(rid);
+
+   check(bird_factory.getReplyRegistry().get(rid) == null,"cancel releases registration");
+   check(stand_in.waitForCancel(rid,WAIT),"server gets CANCEL for the query");
+   check(!th.waitForResponse(WAIT/5),"cancelled handler is not called");
+}
+
+
+/**
+ *      A reply the server sends after a cancel crossed it is ignored.
+ **/
+
+private void testLateReply()
+{
+   stand_in.clear();
+   TestHandler th = new TestHandler();
+   String rid = bird_factory.issueCommand("ASKLIMBA",getArgs(),null,null,th);
+   check(stand_in.waitForRequest(rid,WAIT),"second query reaches the server");
+
+   bird_factory.cancelCommand(rid);
+   stand_in.forceFinishRequest(rid,"too late");
+
+   check(!th.waitForResponse(WAIT/5),"late reply is ignored");
+}
+
+
+/**
+ *      A query that has been answered is not cancelled again.
+ **/
+
+private void testCancelAnswered()
+{
+   stand_in.clear();
+   TestHandler th = new TestHandler();
+   String rid = bird_factory.issueCommand("ASKLIMBA",getArgs(),null,null,th);
+   check(stand_in.waitForRequest(rid,WAIT),"third query reaches the server");
+
+   stand_in.finishRequest(rid,"answer");
+   check(th.waitForResponse(WAIT),"answered query gets its reply");
+   check(bird_factory.getReplyRegistry().get(rid) == null,"answer releases registration");
+
+   bird_factory.cancelCommand(rid);
+   check(!stand_in.waitForCancel(rid,WAIT/5),"no CANCEL after the answer");
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Helper methods                                                          */
+/*                                                                              */
+/********************************************************************************/
+
+private static CommandArgs getArgs()
+{
+   return new CommandArgs("TYPE","EXPLAIN");
+}
+
+
+private void check(boolean fg,String what)
+{
+   if (fg) System.out.println("PASS: " + what);
+   else {
+      System.out.println("FAIL: " + what);
+      ++failure_count;
+    }
+}
+
+
+
+private static final class TestHandler implements ResponseHandler {
+
+   private boolean have_response;
+
+   TestHandler() {
+      have_response = false;
+    }
+
+   @Override public synchronized void handleResponse(Element xml) {
+      have_response = true;
+      notifyAll();
+    }
+
+   synchronized boolean waitForResponse(long wait) {
+      long end = System.currentTimeMillis() + wait;
+      while (!have_response) {
+         long delta = end - System.currentTimeMillis();
+         if (delta <= 0) break;
+         try {
+            wait(delta);
+          }
+         catch (InterruptedException e) { }
+       }
+      return have_response;
+    }
+
+}       // end of inner class TestHandler
+
+
+}       // end of class BirdCancelTest
+
+
+
+
+/* end of BirdCancelTest.java */
@@ -0,0 +1,239 @@
+/********************************************************************************/
+/*                                                                              */
+/*              BirdCodecBenchmark.java                                         */
+/*                                                                              */
+/*      Measure payload compression over a range of message sizes               */
+/*                                                                              */
+/********************************************************************************/
+/*      Copyright 2025 Brown University -- Steven P. Reiss                    */
+/*********************************************************************************
+ *  Copyright 2025, Brown University, Providence, RI.                            *
+ *                                                                               *
+ *                        All Rights Reserved                                    *
+ *                                                                               *
+ * This program and the accompanying materials are made available under the      *
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution, *
+ * and is available at                                                           *
+ *      http://www.eclipse.org/legal/epl-v10.html                                *
+ *                                                                               *
+ ********************************************************************************/
+
+
+
+package edu.brown.cs.diadbb.bird;
+
+import java.util.Random;
+
+import org.w3c.dom.Element;
+
+import edu.brown.cs.ivy.mint.MintConstants.CommandArgs;
+import edu.brown.cs.ivy.xml.IvyXml;
+import edu.brown.cs.ivy.xml.IvyXmlWriter;
+
+/**
+ *      Builds DIAD messages of several sizes the way BIRD does, with and
+ *      without compression, and reports the size on the wire along with the
+ *      time to build and to read back each form.  This shows where the
+ *      Bird.compress.size threshold should sit.  Needs no servers.  The
+ *      optional argument is the number of timed rounds per size.
+ **/
+
+public final class BirdCodecBenchmark implements BirdConstants
+{
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Main program                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+public static void main(String [] args)
+{
+   int rounds = DEFAULT_ROUNDS;
+   if (args.length > 0) rounds = Integer.parseInt(args[0]);
+
+   BirdCodecBenchmark bb = new BirdCodecBenchmark(rounds);
+   bb.process();
+
+   System.exit(0);
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Private Storage                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+private BirdPayloadCodec plain_codec;
+private BirdPayloadCodec compress_codec;
+private int             num_rounds;
+private long            check_sum;
+
+private static final int DEFAULT_ROUNDS = 200;
+private static final int [] SIZES = { 512, 1024, 4096, 16384, 65536, 262144, 1048576 };
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Constructors                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+private BirdCodecBenchmark(int rounds)
+{
+   num_rounds = Math.max(rounds,1);
+   check_sum = 0;
+
+   plain_codec = new BirdPayloadCodec(0);
+   compress_codec = new BirdPayloadCodec(1);
+   compress_codec.setEnabled(true);
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Benchmark methods                                                       */
+/*                                                                              */
+/********************************************************************************/
+
+private void process()
+{
+   System.out.println("BirdCodecBenchmark: " + num_rounds + " rounds per size");
+   System.out.println(String.format("%10s %10s %7s %10s %10s %10s %10s",
+         "raw","encoded","ratio","plain us","enc us","read us","dec us"));
+
+   for (int size : SIZES) {
+      String body = getBody(size);
+      // warm up both paths before timing them
+      for (int i = 0; i < 20; ++i) {
+         readBack(build(body,plain_codec));
+         readBack(build(body,compress_codec));
+       }
+
+      String raw = build(body,plain_codec);
+      String enc = build(body,compress_codec);
+
+      long pbuild = timeBuild(body,plain_codec);
+      long ebuild = timeBuild(body,compress_codec);
+      long pread = timeRead(raw);
+      long eread = timeRead(enc);
+
+      System.out.println(String.format("%10d %10d %6.1f%% %10.1f %10.1f %10.1f %10.1f",
+            raw.length(),enc.length(),100.0 * enc.length() / raw.length(),
+            pbuild / 1000.0,ebuild / 1000.0,pread / 1000.0,eread / 1000.0));
+    }
+
+   // keeps the results live so the work is not optimized away
+   System.out.println("BirdCodecBenchmark: done (" + check_sum + ")");
+}
+
+
+/**
+ *      Return the average time in nanoseconds to build the message.
+ **/
+
+private long timeBuild(String body,BirdPayloadCodec codec)
+{
+   long start = System.nanoTime();
+   for (int i = 0; i < num_rounds; ++i) {
+      check_sum += build(body,codec).length();
+    }
+
+   return (System.nanoTime() - start) / num_rounds;
+}
+
+
+/**
+ *      Return the average time in nanoseconds to parse and expand the
+ *      message as a reply is handled.
+ **/
+
+private long timeRead(String text)
+{
+   long start = System.nanoTime();
+   for (int i = 0; i < num_rounds; ++i) {
+      readBack(text);
+    }
+
+   return (System.nanoTime() - start) / num_rounds;
+}
+
+
+private static String build(String body,BirdPayloadCodec codec)
+{
+   BirdMessage msg = new BirdMessage("SETMODEL",new CommandArgs("NAME","benchmark"));
+   msg.addXml(body);
+
+   return msg.getText(codec);
+}
+
+
+private void readBack(String text)
+{
+   Element xml = IvyXml.convertStringToXml(text);
+   xml = compress_codec.decode(xml);
+   if (xml != null) check_sum += IvyXml.getAttrString(xml,"DO").length();
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Payload methods                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Return a body of about the given size shaped like a stack dump: a
+ *      list of frames, each with a few variables.  Names repeat the way
+ *      they do in real programs; values vary.
+ **/
+
+private static String getBody(int size)
+{
+   Random r = new Random(size);
+   String [] names = { "this", "index", "count", "result", "buffer", "node", "key", "value" };
+   String [] types = { "int", "java.lang.String", "java.util.List", "boolean",
+         "java.util.HashMap", "edu.brown.cs.example.Node" };
+
+   IvyXmlWriter xw = new IvyXmlWriter();
+   xw.begin("STACK");
+   int frame = 0;
+   // copying out the text is costly, so only check the size now and then
+   while (frame % 8 != 0 || xw.toString().length() < size) {
+      xw.begin("FRAME");
+      xw.field("ID",frame);
+      xw.field("METHOD","edu.brown.cs.example.Sample.method" + r.nextInt(50));
+      xw.field("FILE","/home/user/example/src/edu/brown/cs/example/Sample" +
+            r.nextInt(10) + ".java");
+      xw.field("LINE",r.nextInt(2000));
+      int nvar = 2 + r.nextInt(5);
+      for (int i = 0; i < nvar; ++i) {
+         xw.begin("VALUE");
+         xw.field("NAME",names[r.nextInt(names.length)]);
+         xw.field("TYPE",types[r.nextInt(types.length)]);
+         xw.cdataElement("DESCRIPTION",Long.toString(r.nextLong(),36));
+         xw.end("VALUE");
+       }
+      xw.end("FRAME");
+      ++frame;
+    }
+   xw.end("STACK");
+   String rslt = xw.toString();
+   xw.close();
+
+   return rslt;
+}
+
+
+}       // end of class BirdCodecBenchmark
+
+
+
+
+/* end of BirdCodecBenchmark.java */
@@ -0,0 +1,313 @@
+/********************************************************************************/
+/*                                                                              */
+/*              BirdMessageBenchmark.java                                       */
+/*                                                                              */
+/*      Measure allocation when building outgoing DIAD messages                 */
+/*                                                                              */
+/********************************************************************************/
+/*      Copyright 2025 Brown University -- Steven P. Reiss                    */
+/*********************************************************************************
+ *  Copyright 2025, Brown University, Providence, RI.                            *
+ *                                                                               *
+ *                        All Rights Reserved                                    *
+ *                                                                               *
+ * This program and the accompanying materials are made available under the      *
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution, *
+ * and is available at                                                           *
+ *      http://www.eclipse.org/legal/epl-v10.html                                *
+ *                                                                               *
+ ********************************************************************************/
+
+
+
+package edu.brown.cs.diadbb.bird;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.Random;
+
+import edu.brown.cs.ivy.mint.MintConstants.CommandArgs;
+import edu.brown.cs.ivy.xml.IvyXmlWriter;
+
+/**
+ *      Compares the bytes allocated and the time taken to build an outgoing
+ *      message the way BIRD used to (the body written to its own writer,
+ *      copied into the DIAD element and then logged in full) with the way
+ *      BirdMessage does it now (one writer, truncated log text).  Both a
+ *      CDATA body, as for ASKLIMBA, and an XML body, as for SETMODEL, are
+ *      tried at several sizes.  Needs no servers.  Allocation is measured
+ *      per thread and is only reported on JVMs that support it.  The
+ *      optional argument is the number of timed rounds per case.
+ **/
+
+public final class BirdMessageBenchmark implements BirdConstants
+{
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Main program                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+public static void main(String [] args)
+{
+   int rounds = DEFAULT_ROUNDS;
+   if (args.length > 0) rounds = Integer.parseInt(args[0]);
+
+   BirdMessageBenchmark bb = new BirdMessageBenchmark(rounds);
+   bb.process();
+
+   System.exit(0);
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Private Storage                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+private com.sun.management.ThreadMXBean thread_bean;
+private int             num_rounds;
+private long            check_sum;
+
+private static final int DEFAULT_ROUNDS = 500;
+private static final int LOG_SIZE = 2048;
+private static final int [] SIZES = { 1024, 16384, 262144 };
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Constructors                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+private BirdMessageBenchmark(int rounds)
+{
+   num_rounds = Math.max(rounds,1);
+   check_sum = 0;
+
+   thread_bean = null;
+   ThreadMXBean tb = ManagementFactory.getThreadMXBean();
+   if (tb instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean stb = (com.sun.management.ThreadMXBean) tb;
+      if (stb.isThreadAllocatedMemorySupported()) {
+         stb.setThreadAllocatedMemoryEnabled(true);
+         thread_bean = stb;
+       }
+    }
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Benchmark methods                                                       */
+/*                                                                              */
+/********************************************************************************/
+
+private void process()
+{
+   System.out.println("BirdMessageBenchmark: " + num_rounds + " rounds per case");
+   if (thread_bean == null) System.out.println("Allocation counts not available");
+   System.out.println(String.format("%6s %10s %12s %12s %10s %10s",
+         "body","size","old bytes","new bytes","old us","new us"));
+
+   for (int size : SIZES) {
+      String text = getText(size);
+      String xml = getXml(size);
+      // warm up both paths before measuring them
+      for (int i = 0; i < 50; ++i) {
+         runCase(text,xml,true);
+         runCase(text,xml,false);
+       }
+      report("CDATA",size,text,null);
+      report("XML",size,null,xml);
+    }
+
+   // keeps the results live so the work is not optimized away
+   System.out.println("BirdMessageBenchmark: done (" + check_sum + ")");
+}
+
+
+private void report(String what,int size,String text,String xml)
+{
+   long [] oldr = measure(text,xml,true);
+   long [] newr = measure(text,xml,false);
+
+   System.out.println(String.format("%6s %10d %12s %12s %10.1f %10.1f",
+         what,size,getBytes(oldr[0]),getBytes(newr[0]),
+         oldr[1] / 1000.0,newr[1] / 1000.0));
+}
+
+
+/**
+ *      Return the average bytes allocated (or -1) and nanoseconds taken to
+ *      build one message.
+ **/
+
+private long [] measure(String text,String xml,boolean old)
+{
+   long tid = Thread.currentThread().getId();
+   long a0 = (thread_bean == null ? 0 : thread_bean.getThreadAllocatedBytes(tid));
+   long t0 = System.nanoTime();
+   for (int i = 0; i < num_rounds; ++i) {
+      runCase(text,xml,old);
+    }
+   long t1 = System.nanoTime();
+   long a1 = (thread_bean == null ? 0 : thread_bean.getThreadAllocatedBytes(tid));
+
+   long [] rslt = new long[2];
+   rslt[0] = (thread_bean == null ? -1 : (a1 - a0) / num_rounds);
+   rslt[1] = (t1 - t0) / num_rounds;
+
+   return rslt;
+}
+
+
+private void runCase(String text,String xml,boolean old)
+{
+   String msg;
+   if (text != null) {
+      if (old) msg = buildOld("ASKLIMBA",getArgs(),"QUESTION",text);
+      else msg = buildNew("ASKLIMBA",getArgs(),"QUESTION",text);
+    }
+   else {
+      if (old) msg = buildOld("SETMODEL",getArgs(),null,xml);
+      else msg = buildNew("SETMODEL",getArgs(),null,xml);
+    }
+   check_sum += msg.length();
+}
+
+
+private static String getBytes(long v)
+{
+   if (v < 0) return "n/a";
+
+   return Long.toString(v);
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Message building methods                                                */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Build a message as issueCommand and sendDiadMessageAsync did before
+ *      BirdMessage, returning the log text.
+ **/
+
+private static String buildOld(String cmd,CommandArgs args,String elt,String body)
+{
+   String cnts = body;
+   if (elt != null) {
+      IvyXmlWriter xw = new IvyXmlWriter();
+      xw.cdataElement(elt,body);
+      cnts = xw.toString();
+      xw.close();
+    }
+
+   IvyXmlWriter xw = new IvyXmlWriter();
+   xw.begin("DIAD");
+   xw.field("DO",cmd);
+   for (Map.Entry<String,Object> ent : args.entrySet()) {
+      xw.field(ent.getKey(),ent.getValue());
+    }
+   if (cnts != null) xw.xmlText(cnts);
+   xw.end("DIAD");
+   String msg = xw.toString();
+   xw.close();
+
+   return "Send to DIAD: " + msg;
+}
+
+
+/**
+ *      Build a message as sendDeferredCommand and sendMessageAsync do now,
+ *      returning the log text.
+ **/
+
+private static String buildNew(String cmd,CommandArgs args,String elt,String body)
+{
+   BirdMessage bmsg = new BirdMessage(cmd,args);
+   bmsg.addCdata(elt,body);
+   String msg = bmsg.getText(null);
+
+   return "Send to DIAD: " + BirdMessage.getLogText(msg,LOG_SIZE);
+}
+
+
+private static CommandArgs getArgs()
+{
+   return new CommandArgs("RID","RID_17","TYPE","EXPLAIN");
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Payload methods                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Return free text of about the given size, as for a question.
+ **/
+
+private static String getText(int size)
+{
+   Random r = new Random(size);
+   String [] words = { "the", "value", "of", "count", "should", "be", "zero", "when",
+         "loop", "exits", "but", "is", "index", "array", "null", "returned" };
+
+   StringBuffer buf = new StringBuffer();
+   while (buf.length() < size) {
+      if (buf.length() > 0) buf.append(" ");
+      buf.append(words[r.nextInt(words.length)]);
+    }
+
+   return buf.toString();
+}
+
+
+/**
+ *      Return an XML body of about the given size, as for a model.
+ **/
+
+private static String getXml(int size)
+{
+   Random r = new Random(size);
+
+   IvyXmlWriter xw = new IvyXmlWriter();
+   xw.begin("MODEL");
+   int ct = 0;
+   // copying out the text is costly, so only check the size now and then
+   while (ct % 16 != 0 || xw.toString().length() < size) {
+      xw.begin("LOCATION");
+      xw.field("FILE","/home/user/example/src/Sample" + r.nextInt(20) + ".java");
+      xw.field("LINE",r.nextInt(2000));
+      xw.field("PRIORITY",r.nextDouble());
+      xw.end("LOCATION");
+      ++ct;
+    }
+   xw.end("MODEL");
+   String rslt = xw.toString();
+   xw.close();
+
+   return rslt;
+}
+
+
+}       // end of class BirdMessageBenchmark
+
+
+
+
+/* end of BirdMessageBenchmark.java */
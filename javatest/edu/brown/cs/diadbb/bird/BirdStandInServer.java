@@ -0,0 +1,331 @@
+/********************************************************************************/
+/*                                                                              */
+/*              BirdStandInServer.java                                          */
+/*                                                                              */
+/*      Local stand-in for DIAD and LIMBA used to test the BIRD protocol        */
+/*                                                                              */
+/********************************************************************************/
+/*      Copyright 2025 Brown University -- Steven P. Reiss                    */
+/*********************************************************************************
+ *  Copyright 2025, Brown University, Providence, RI.                            *
+ *                                                                               *
+ *                        All Rights Reserved                                    *
+ *                                                                               *
+ * This program and the accompanying materials are made available under the      *
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution, *
+ * and is available at                                                           *
+ *      http://www.eclipse.org/legal/epl-v10.html                                *
+ *                                                                               *
+ ********************************************************************************/
+
+
+
+package edu.brown.cs.diadbb.bird;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.w3c.dom.Element;
+
+import edu.brown.cs.bubbles.board.BoardSetup;
+import edu.brown.cs.ivy.mint.MintArguments;
+import edu.brown.cs.ivy.mint.MintControl;
+import edu.brown.cs.ivy.mint.MintHandler;
+import edu.brown.cs.ivy.mint.MintMessage;
+import edu.brown.cs.ivy.xml.IvyXml;
+import edu.brown.cs.ivy.xml.IvyXmlWriter;
+
+/**
+ *      The stand-in answers on the session's Mint name the way DIAD and
+ *      LIMBA do.  PING gets a PONG.  ASKLIMBA is acknowledged and then left
+ *      pending until the test finishes it with finishRequest().  CANCEL and
+ *      every other command are recorded and answered with a RESULT naming
+ *      the command.  BATCH runs its commands in order and answers with one
+ *      REPLY per command, or can be made to not understand BATCH or to
+ *      never answer it.  It must not be run where a real DIAD uses the
+ *      same Mint name.
+ **/
+
+class BirdStandInServer implements BirdConstants
+{
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Private Storage                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+enum BatchMode { NORMAL, UNSUPPORTED, SILENT }
+
+private List<String>    received_commands;
+private Set<String>     pending_requests;
+private Set<String>     cancelled_requests;
+private int             batch_count;
+private BatchMode       batch_mode;
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Constructors                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+BirdStandInServer()
+{
+   received_commands = new ArrayList<>();
+   pending_requests = new HashSet<>();
+   cancelled_requests = new HashSet<>();
+   batch_count = 0;
+   batch_mode = BatchMode.NORMAL;
+}
+
+
+void start()
+{
+   MintControl mc = BoardSetup.getSetup().getMintControl();
+   mc.register("<DIAD DO='_VAR_0' />",new CommandHandler());
+   mc.register("<LIMBA DO='PING' />",new PingHandler());
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Access methods                                                          */
+/*                                                                              */
+/********************************************************************************/
+
+synchronized void setBatchMode(BatchMode md)    { batch_mode = md; }
+
+synchronized int getBatchCount()                { return batch_count; }
+
+synchronized List<String> getReceivedCommands()
+{
+   return new ArrayList<>(received_commands);
+}
+
+
+synchronized void clear()
+{
+   received_commands.clear();
+   pending_requests.clear();
+   cancelled_requests.clear();
+   batch_count = 0;
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Waiting methods                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+synchronized boolean waitForRequest(String rid,long wait)
+{
+   long end = System.currentTimeMillis() + wait;
+   while (!pending_requests.contains(rid)) {
+      long delta = end - System.currentTimeMillis();
+      if (delta <= 0) return false;
+      try {
+         wait(delta);
+       }
+      catch (InterruptedException e) { }
+    }
+
+   return true;
+}
+
+
+synchronized boolean waitForCancel(String rid,long wait)
+{
+   long end = System.currentTimeMillis() + wait;
+   while (!cancelled_requests.contains(rid)) {
+      long delta = end - System.currentTimeMillis();
+      if (delta <= 0) return false;
+      try {
+         wait(delta);
+       }
+      catch (InterruptedException e) { }
+    }
+
+   return true;
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Reply methods                                                           */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Send the final reply to a pending ASKLIMBA, as LIMBA would once its
+ *      model has answered.  Does nothing for a cancelled request.
+ **/
+
+void finishRequest(String rid,String text)
+{
+   synchronized (this) {
+      if (!pending_requests.remove(rid)) return;
+    }
+
+   IvyXmlWriter xw = new IvyXmlWriter();
+   xw.begin("DIADREPLY");
+   xw.field("RID",rid);
+   xw.begin("RESULT");
+   xw.cdataElement("RESPONSE",text);
+   xw.end("RESULT");
+   xw.end("DIADREPLY");
+   String msg = xw.toString();
+   xw.close();
+
+   BoardSetup.getSetup().getMintControl().send(msg);
+}
+
+
+/**
+ *      Send a reply for a request whether or not it was cancelled, as a
+ *      server that did not see the cancel in time would.
+ **/
+
+void forceFinishRequest(String rid,String text)
+{
+   synchronized (this) {
+      pending_requests.add(rid);
+    }
+   finishRequest(rid,text);
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Command processing                                                      */
+/*                                                                              */
+/********************************************************************************/
+
+/**
+ *      Handle a single command and return its reply, or null for none.
+ **/
+
+private String processCommand(String cmd,Element xml)
+{
+   String rid = IvyXml.getAttrString(xml,"RID");
+
+   synchronized (this) {
+      received_commands.add(cmd);
+      switch (cmd) {
+         case "PING" :
+            return "<PONG />";
+         case "ASKLIMBA" :
+            pending_requests.add(rid);
+            notifyAll();
+            return "<OK RID='" + rid + "' />";
+         case "CANCEL" :
+            pending_requests.remove(rid);
+            cancelled_requests.add(rid);
+            notifyAll();
+            break;
+         default :
+            break;
+       }
+    }
+
+   IvyXmlWriter xw = new IvyXmlWriter();
+   xw.begin("RESULT");
+   xw.field("DO",cmd);
+   if (rid != null) xw.field("RID",rid);
+   xw.end("RESULT");
+   String rslt = xw.toString();
+   xw.close();
+
+   return rslt;
+}
+
+
+/**
+ *      Handle a BATCH.  Returns null if the batch should not be answered.
+ **/
+
+private String processBatch(Element xml)
+{
+   BatchMode md;
+   synchronized (this) {
+      ++batch_count;
+      md = batch_mode;
+    }
+
+   switch (md) {
+      case SILENT :
+         return null;
+      case UNSUPPORTED :
+         return "<ERROR>Unknown command BATCH</ERROR>";
+      default :
+         break;
+    }
+
+   IvyXmlWriter xw = new IvyXmlWriter();
+   xw.begin("BATCH");
+   for (Element cxml : IvyXml.children(IvyXml.getChild(xml,"BATCH"),"COMMAND")) {
+      String cmd = IvyXml.getAttrString(cxml,"DO");
+      xw.begin("REPLY");
+      xw.field("INDEX",IvyXml.getAttrInt(cxml,"INDEX"));
+      String r = processCommand(cmd,cxml);
+      if (r != null) xw.xmlText(r);
+      xw.end("REPLY");
+    }
+   xw.end("BATCH");
+   String rslt = xw.toString();
+   xw.close();
+
+   return rslt;
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Mint handlers                                                           */
+/*                                                                              */
+/********************************************************************************/
+
+private final class CommandHandler implements MintHandler {
+
+   @Override public void receive(MintMessage msg,MintArguments args) {
+      String cmd = args.getArgument(0);
+      Element xml = msg.getXml();
+      String rslt = null;
+      if (cmd.equals("BATCH")) {
+         rslt = processBatch(xml);
+         // a wedged server never answers at all
+         if (rslt == null) return;
+       }
+      else rslt = processCommand(cmd,xml);
+      msg.replyTo(rslt);
+    }
+
+}       // end of inner class CommandHandler
+
+
+
+private static final class PingHandler implements MintHandler {
+
+   @Override public void receive(MintMessage msg,MintArguments args) {
+      msg.replyTo("<PONG />");
+    }
+
+}       // end of inner class PingHandler
+
+
+}       // end of class BirdStandInServer
+
+
+
+
+/* end of BirdStandInServer.java */